@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql.benchmarks;
+
+import com.github.fabienbarbero.sql.SQLNull;
+import com.github.fabienbarbero.sql.SQLQueryBuilder;
+import com.github.fabienbarbero.sql.SQLRunner;
+import com.github.fabienbarbero.sql.SQLTransaction;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measure the binding of each supported parameter type. The statement is cached, so the benchmark measures the
+ * binding and a trivial query execution.
+ *
+ * @author Fabien Barbero
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+public class BindingBenchmark
+{
+
+    public enum Type
+    {
+        STRING( "value" ),
+        LONG( 42L ),
+        INTEGER( 42 ),
+        SHORT( ( short ) 42 ),
+        DOUBLE( 4.2 ),
+        BOOLEAN( true ),
+        BIG_DECIMAL( new BigDecimal( "4.2" ) ),
+        BYTES( new byte[]{ 1, 2, 3, 4 } ),
+        LOCAL_DATE( LocalDate.of( 2018, 1, 1 ) ),
+        INSTANT( Instant.ofEpochSecond( 1514764800 ) ),
+        LOCAL_TIME( LocalTime.NOON ),
+        ENUM( TimeUnit.SECONDS ),
+        NULL( SQLNull.of( Types.VARCHAR ) );
+
+        private final Object value;
+
+        Type( Object value )
+        {
+            this.value = value;
+        }
+    }
+
+    @Param
+    private Type type;
+
+    private Connection conn;
+    private SQLTransaction tx;
+    private SQLRunner runner;
+    private SQLQueryBuilder query;
+
+    @Setup
+    public void setUp()
+            throws Exception
+    {
+        conn = Database.open( 0 );
+        tx = SQLTransaction.begin( conn );
+        tx.enableStatementCache( 4 );
+        runner = new SQLRunner( tx );
+        query = new SQLQueryBuilder( "select count(*) from ITEMS where ? is not null", type.value );
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        tx.close();
+    }
+
+    @Benchmark
+    public long bind()
+    {
+        return runner.count( query );
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql.benchmarks;
+
+import com.github.fabienbarbero.sql.AbstractBaseDAO;
+import com.github.fabienbarbero.sql.BaseEntity;
+import com.github.fabienbarbero.sql.HasSQLConnection;
+import com.github.fabienbarbero.sql.SQLFaultException;
+import com.github.fabienbarbero.sql.SQLQueryBuilder;
+import com.github.fabienbarbero.sql.SQLRecord;
+import com.github.fabienbarbero.sql.SQLTransaction;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measure the DAO operations on an in-memory database of 1000 items
+ *
+ * @author Fabien Barbero
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+public class DAOBenchmark
+{
+
+    private SQLTransaction tx;
+    private ItemDAO dao;
+    private long nextId = 1000;
+    private long findId;
+
+    @Setup
+    public void setUp()
+            throws Exception
+    {
+        tx = SQLTransaction.begin( Database.open( 1000 ) );
+        dao = new ItemDAO( tx );
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        tx.close();
+    }
+
+    @Benchmark
+    public Object find()
+    {
+        findId = ( findId + 1 ) % 1000;
+        return dao.find( findId );
+    }
+
+    @Benchmark
+    public void add()
+    {
+        Item item = new Item();
+        item.id = nextId++;
+        item.name = "item" + item.id;
+        dao.addEntity( item );
+    }
+
+    public static final class Item
+            implements BaseEntity<Long>
+    {
+
+        private long id;
+        private String name;
+        private int quantity;
+        private double price;
+
+        @Override
+        public Long getPrimaryKey()
+        {
+            return id;
+        }
+    }
+
+    private static final class ItemDAO
+            extends AbstractBaseDAO<Item, Long>
+    {
+
+        private ItemDAO( HasSQLConnection conn )
+        {
+            super( "ITEMS", "ID", conn );
+        }
+
+        @Override
+        public Item buildEntity( SQLRecord record )
+        {
+            Item item = new Item();
+            item.id = record.getLongOrDefault( "ID", 0 );
+            item.name = record.getStringOrDefault( "NAME", null );
+            item.quantity = record.getIntOrDefault( "QUANTITY", 0 );
+            item.price = record.getDoubleOrDefault( "PRICE", 0 );
+            return item;
+        }
+
+        @Override
+        public void addEntity( Item entity )
+                throws SQLFaultException
+        {
+            execute( new SQLQueryBuilder( "insert into ITEMS (ID, NAME, QUANTITY, PRICE) values (?,?,?,?)",
+                                          entity.id, entity.name, entity.quantity, entity.price ) );
+        }
+
+        @Override
+        protected void update( Item entity )
+                throws SQLFaultException
+        {
+            execute( new SQLQueryBuilder( "update ITEMS set NAME=?, QUANTITY=?, PRICE=? where ID=?",
+                                          entity.name, entity.quantity, entity.price, entity.id ) );
+        }
+    }
+
+}
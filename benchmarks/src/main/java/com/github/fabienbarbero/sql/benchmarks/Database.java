@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql.benchmarks;
+
+import com.github.fabienbarbero.sql.SQLQueryBuilder;
+import com.github.fabienbarbero.sql.SQLRecord;
+import com.github.fabienbarbero.sql.SQLRecordMapper;
+import com.github.fabienbarbero.sql.SQLRunner;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-memory SQLite database used by the benchmarks
+ *
+ * @author Fabien Barbero
+ */
+final class Database
+{
+
+    static final SQLRecordMapper<Item> MAPPER = Database::buildItem;
+
+    private Database()
+    {
+    }
+
+    /**
+     * Open a new in-memory database containing an ITEMS table
+     *
+     * @param rows The number of items to insert
+     * @return The connection (the database is deleted when it is closed)
+     * @throws SQLException Error opening the database
+     */
+    static Connection open( int rows )
+            throws SQLException
+    {
+        Connection conn = DriverManager.getConnection( "jdbc:sqlite::memory:" );
+        SQLRunner runner = new SQLRunner( conn );
+        runner.execute( new SQLQueryBuilder( "create table ITEMS ("
+                                             + "ID integer primary key, "
+                                             + "NAME varchar(128) not null, "
+                                             + "QUANTITY integer not null, "
+                                             + "PRICE double not null)" ) );
+
+        List<Object[]> values = new ArrayList<>( rows );
+        for ( int i = 0; i < rows; i++ ) {
+            values.add( new Object[]{ i, "item" + i, i % 100, i * 1.5 } );
+        }
+        conn.setAutoCommit( false );
+        runner.executeBatch( "insert into ITEMS (ID, NAME, QUANTITY, PRICE) values (?,?,?,?)", values );
+        conn.commit();
+        conn.setAutoCommit( true );
+        return conn;
+    }
+
+    static Item buildItem( SQLRecord record )
+    {
+        Item item = new Item();
+        item.id = record.getLongOrDefault( "ID", 0 );
+        item.name = record.getStringOrDefault( "NAME", null );
+        item.quantity = record.getIntOrDefault( "QUANTITY", 0 );
+        item.price = record.getDoubleOrDefault( "PRICE", 0 );
+        return item;
+    }
+
+    static final class Item
+    {
+
+        long id;
+        String name;
+        int quantity;
+        double price;
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql.benchmarks;
+
+import com.github.fabienbarbero.sql.SQLQueryBuilder;
+import com.github.fabienbarbero.sql.SQLRunner;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Compare "in" lists (in chunks of 512 keys) with a temporary table to select items by keys, to find the threshold
+ * given to {@link SQLRunner#setTempTableThreshold(int, String)}
+ *
+ * @author Fabien Barbero
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+public class KeysBenchmark
+{
+
+    private static final int ROWS = 100000;
+    private static final int CHUNK_SIZE = 512;
+
+    @Param( { "64", "256", "1024", "4096", "16384" } )
+    private int keys;
+
+    private Connection conn;
+    private SQLRunner inListRunner;
+    private SQLRunner tempTableRunner;
+    private SQLQueryBuilder query;
+    private List<Long> ids;
+
+    @Setup
+    public void setUp()
+            throws Exception
+    {
+        conn = Database.open( ROWS );
+        inListRunner = new SQLRunner( conn );
+        tempTableRunner = new SQLRunner( conn );
+        tempTableRunner.setTempTableThreshold( 0, "integer" );
+        query = new SQLQueryBuilder( "select * from ITEMS where " );
+
+        ids = new ArrayList<>( keys );
+        for ( int i = 0; i < keys; i++ ) {
+            ids.add( ( long ) i * ( ROWS / keys ) );
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+            throws Exception
+    {
+        conn.close();
+    }
+
+    @Benchmark
+    public int inList()
+    {
+        int count = 0;
+        for ( int from = 0; from < ids.size(); from += CHUNK_SIZE ) {
+            List<Long> chunk = ids.subList( from, Math.min( ids.size(), from + CHUNK_SIZE ) );
+            count += inListRunner.queryIn( Database.MAPPER, query, "ID", chunk ).size();
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int tempTable()
+    {
+        return tempTableRunner.queryIn( Database.MAPPER, query, "ID", ids ).size();
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql.benchmarks;
+
+import com.github.fabienbarbero.sql.SQLIterator;
+import com.github.fabienbarbero.sql.SQLQueryBuilder;
+import com.github.fabienbarbero.sql.SQLRunner;
+import java.sql.Connection;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compare the ways of reading a query results
+ *
+ * @author Fabien Barbero
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+public class QueryBenchmark
+{
+
+    @Param( { "10", "1000" } )
+    private int rows;
+
+    private Connection conn;
+    private SQLRunner runner;
+    private SQLQueryBuilder query;
+
+    @Setup
+    public void setUp()
+            throws Exception
+    {
+        conn = Database.open( rows );
+        runner = new SQLRunner( conn );
+        query = new SQLQueryBuilder( "select * from ITEMS" );
+    }
+
+    @TearDown
+    public void tearDown()
+            throws Exception
+    {
+        conn.close();
+    }
+
+    @Benchmark
+    public void query( Blackhole bh )
+    {
+        for ( Database.Item item : runner.query( Database.MAPPER, query ) ) {
+            bh.consume( item );
+        }
+    }
+
+    @Benchmark
+    public void queryIterator( Blackhole bh )
+    {
+        try ( SQLIterator<Database.Item> it = runner.queryIterator( Database.MAPPER, null, false, query ) ) {
+            while ( it.hasNext() ) {
+                bh.consume( it.next() );
+            }
+        }
+    }
+
+    @Benchmark
+    public void queryAsStream( Blackhole bh )
+    {
+        try ( Stream<Database.Item> stream = runner.queryAsStream( Database.MAPPER, null, query ) ) {
+            stream.forEach( bh::consume );
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql.benchmarks;
+
+import com.github.fabienbarbero.sql.SQLQueryBuilder;
+import com.github.fabienbarbero.sql.SQLRecordMapper;
+import com.github.fabienbarbero.sql.SQLRunner;
+import java.sql.Connection;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Compare the cost of the {@link com.github.fabienbarbero.sql.SQLRecord} getters, reading 1000 rows of 4 columns
+ *
+ * @author Fabien Barbero
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+public class RecordBenchmark
+{
+
+    private static final SQLRecordMapper<Object> OPTIONAL_BY_NAME = record -> {
+        Database.Item item = new Database.Item();
+        item.id = record.getLong( "ID" ).get();
+        item.name = record.getString( "NAME" ).get();
+        item.quantity = record.getInteger( "QUANTITY" ).get();
+        item.price = record.getFloat( "PRICE" ).get();
+        return item;
+    };
+
+    private static final SQLRecordMapper<Object> OPTIONAL_BY_INDEX = record -> {
+        Database.Item item = new Database.Item();
+        item.id = record.getLong( 1 ).get();
+        item.name = record.getString( 2 ).get();
+        item.quantity = record.getInteger( 3 ).get();
+        item.price = record.getFloat( 4 ).get();
+        return item;
+    };
+
+    private static final SQLRecordMapper<Object> PRIMITIVE_BY_NAME = Database::buildItem;
+
+    private static final SQLRecordMapper<Object> PRIMITIVE_BY_INDEX = record -> {
+        Database.Item item = new Database.Item();
+        item.id = record.getLongOrDefault( 1, 0 );
+        item.name = record.getStringOrDefault( 2, null );
+        item.quantity = record.getIntOrDefault( 3, 0 );
+        item.price = record.getDoubleOrDefault( 4, 0 );
+        return item;
+    };
+
+    private Connection conn;
+    private SQLRunner runner;
+    private SQLQueryBuilder query;
+
+    @Setup
+    public void setUp()
+            throws Exception
+    {
+        conn = Database.open( 1000 );
+        runner = new SQLRunner( conn );
+        query = new SQLQueryBuilder( "select ID, NAME, QUANTITY, PRICE from ITEMS" );
+    }
+
+    @TearDown
+    public void tearDown()
+            throws Exception
+    {
+        conn.close();
+    }
+
+    @Benchmark
+    public Object optionalByName()
+    {
+        return runner.query( OPTIONAL_BY_NAME, query );
+    }
+
+    @Benchmark
+    public Object optionalByIndex()
+    {
+        return runner.query( OPTIONAL_BY_INDEX, query );
+    }
+
+    @Benchmark
+    public Object primitiveByName()
+    {
+        return runner.query( PRIMITIVE_BY_NAME, query );
+    }
+
+    @Benchmark
+    public Object primitiveByIndex()
+    {
+        return runner.query( PRIMITIVE_BY_INDEX, query );
+    }
+
+}
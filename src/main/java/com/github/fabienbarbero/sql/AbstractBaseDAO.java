@@ -18,6 +18,15 @@
  */
 package com.github.fabienbarbero.sql;
 
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * @author Fabien Barbero
  */
@@ -25,26 +34,161 @@ public abstract class AbstractBaseDAO<E extends BaseEntity<PK>, PK>
         extends AbstractDAO<E>
         implements BaseDAO<E, PK>
 {
-    private final String primaryColumnName;
+    private static final int MAX_IN_KEYS = SQLQueryBuilder.MAX_IN_PARAMS;
+    private static final Map<String, Templates> TEMPLATES = new ConcurrentHashMap<>();
+
+    private final String normalizedTableName;
+    private final Templates templates;
+    private SQLEntityCache<PK, E> entityCache;
 
     public AbstractBaseDAO( String tableName, String primaryColumnName, HasSQLConnection conn )
     {
         super( tableName, conn );
-        this.primaryColumnName = primaryColumnName;
+        this.normalizedTableName = SQLStatements.normalizeTable( tableName );
+        this.templates = TEMPLATES.computeIfAbsent( tableName + '\0' + primaryColumnName,
+                                                    k -> new Templates( tableName, primaryColumnName ) );
+    }
+
+    /**
+     * Set the cache used by {@link #find(Object)}. The cache is usually shared by all the DAO instances of the same
+     * type. The entities are cached only when they are read by a {@link SQLTransaction} which has not modified the
+     * table, so the cache contains committed data only. The cache is not used by the DAO created with another
+     * connection source.
+     * <p>
+     * The updated and deleted entities are invalidated by {@link #updateEntity(BaseEntity)} and
+     * {@link #deleteEntity(Object)}. Any other method modifying the table must call {@link #entityModified(Object)}.
+     *
+     * @param entityCache The cache, or null to disable it
+     */
+    public void setEntityCache( SQLEntityCache<PK, E> entityCache )
+    {
+        this.entityCache = entityCache;
+    }
+
+    /**
+     * Get the cache used by {@link #find(Object)}
+     *
+     * @return The cache, or null if disabled
+     */
+    public SQLEntityCache<PK, E> getEntityCache()
+    {
+        return entityCache;
     }
 
     @Override
     public E find( PK key )
             throws SQLFaultException
     {
-        return querySingle( this, new SQLQueryBuilder( "select * from " + tableName + " where " + primaryColumnName + " = ?", key ) );
+        SQLEntityCache<PK, E> cache = entityCache;
+        SQLTransaction tx = getTransaction();
+        if ( cache == null || tx == null || tx.isTableWritten( normalizedTableName ) ) {
+            // The transaction may read its own uncommitted changes, which cannot be tracked without SQLTransaction
+            return findUncached( key );
+        }
+
+        E entity = cache.get( key );
+        if ( entity == null ) {
+            long generation = cache.getGeneration( key );
+            entity = findUncached( key );
+            if ( entity != null ) {
+                cache.put( key, entity, generation );
+            }
+        }
+        return entity;
+    }
+
+    /**
+     * Find several entities by their primary keys. The keys are queried in chunks using an "in" clause. The size of
+     * the chunks is rounded up to a power of two (by repeating the last key) so that a few statements only are
+     * prepared for any number of keys. Above the threshold of {@link #setTempTableThreshold(int, String)}, the keys
+     * are queried using a temporary table.
+     * <p>
+     * The returned map contains every requested key: a key without entity is mapped to null. The keys must have the
+     * same type as the primary keys built by the DAO, otherwise an {@link IllegalStateException} is thrown.
+     *
+     * @param keys The primary key values
+     * @return The entities found, in the order of the keys. A key without entity is mapped to null.
+     * @throws SQLFaultException SQL error
+     */
+    @Override
+    public Map<PK, E> findAll( Collection<PK> keys )
+            throws SQLFaultException
+    {
+        Map<PK, E> entities = new LinkedHashMap<>();
+        SQLEntityCache<PK, E> cache = entityCache;
+        SQLTransaction tx = getTransaction();
+        boolean useCache = cache != null && tx != null && !tx.isTableWritten( normalizedTableName );
+
+        List<PK> missing = new ArrayList<>();
+        Map<PK, Long> generations = useCache ? new HashMap<>() : null;
+        for ( PK key : keys ) {
+            if ( entities.containsKey( key ) ) {
+                continue;
+            }
+            E entity = null;
+            if ( useCache ) {
+                entity = cache.get( key );
+                if ( entity == null ) {
+                    generations.put( key, cache.getGeneration( key ) );
+                }
+            }
+            if ( entity == null ) {
+                missing.add( key );
+            }
+            entities.put( key, entity );
+        }
+
+        if ( missing.size() > getTempTableThreshold() ) {
+            found( queryIn( this, templates.findWhere.bind(), templates.primaryColumnName, missing ), entities, cache, generations );
+        } else {
+            for ( int from = 0; from < missing.size(); from += MAX_IN_KEYS ) {
+                List<PK> chunk = missing.subList( from, Math.min( missing.size(), from + MAX_IN_KEYS ) );
+                found( query( this, inQuery( chunk ) ), entities, cache, generations );
+            }
+        }
+        return entities;
+    }
+
+    private void found( List<E> found, Map<PK, E> entities, SQLEntityCache<PK, E> cache, Map<PK, Long> generations )
+    {
+        for ( E entity : found ) {
+            PK key = entity.getPrimaryKey();
+            if ( !entities.containsKey( key ) ) {
+                // The key read from the row is not equal to the requested one (for instance a Long and an Integer)
+                throw new IllegalStateException( "Entity found with a key which was not requested: " + key + " ("
+                                                 + ( key == null ? null : key.getClass().getName() ) + ")" );
+            }
+            entities.put( key, entity );
+            if ( generations != null && generations.containsKey( key ) ) {
+                cache.put( key, entity, generations.get( key ) );
+            }
+        }
+    }
+
+    @Override
+    public final void updateEntity( E entity )
+            throws SQLFaultException
+    {
+        update( entity );
+        entityModified( entity.getPrimaryKey() );
     }
 
+    /**
+     * Update an entity in the database. The entity is then invalidated in the cache by
+     * {@link #updateEntity(BaseEntity)}.
+     *
+     * @param entity The entity to update
+     * @throws SQLFaultException SQL error
+     */
+    protected abstract void update( E entity )
+            throws SQLFaultException;
+
     @Override
     public void deleteEntity( PK key )
             throws SQLFaultException
     {
-        execute( new SQLQueryBuilder( "delete from " + tableName + " where " + primaryColumnName + " = ?", key ) );
+        execute( templates.delete.bind( key ) );
+        entityModified( key );
     }
 
     @Override
@@ -54,4 +198,84 @@ public abstract class AbstractBaseDAO<E extends BaseEntity<PK>, PK>
         deleteEntity( entity.getPrimaryKey() );
     }
 
+    /**
+     * Notify that an entity has been modified or deleted. The entity is removed from the cache now and once again
+     * when the transaction is committed. Until then, {@link #find(Object)} does not use the cache in this transaction.
+     *
+     * @param key The primary key of the modified entity
+     */
+    protected void entityModified( PK key )
+    {
+        SQLEntityCache<PK, E> cache = entityCache;
+        if ( cache == null ) {
+            return;
+        }
+
+        cache.invalidate( key );
+        SQLTransaction tx = getTransaction();
+        if ( tx != null ) {
+            tx.tableWritten( normalizedTableName );
+            tx.afterCommit( new AbstractMap.SimpleImmutableEntry<>( cache, key ), () -> cache.invalidate( key ) );
+        }
+    }
+
+    private SQLQueryBuilder inQuery( List<PK> keys )
+    {
+        int size = SQLQueryBuilder.bucketSize( keys.size() );
+        Object[] params = new Object[ size ];
+        for ( int i = 0; i < size; i++ ) {
+            params[ i ] = keys.get( Math.min( i, keys.size() - 1 ) );
+        }
+        return SQLQueryBuilder.of( templates.findIn( size ).getSQL(), params );
+    }
+
+    private E findUncached( PK key )
+            throws SQLFaultException
+    {
+        return querySingle( this, templates.find.bind( key ) );
+    }
+
+    /**
+     * The queries of a table, shared by all the DAO instances
+     */
+    private static final class Templates
+    {
+        private final String tableName;
+        private final String primaryColumnName;
+        private final SQLQueryTemplate find;
+        private final SQLQueryTemplate findWhere;
+        private final SQLQueryTemplate delete;
+        private final SQLQueryTemplate[] findIn = new SQLQueryTemplate[ Integer.numberOfTrailingZeros( MAX_IN_KEYS ) + 1 ];
+
+        private Templates( String tableName, String primaryColumnName )
+        {
+            this.tableName = tableName;
+            this.primaryColumnName = primaryColumnName;
+            this.find = SQLQueryTemplate.compile( "select * from " + tableName + " where " + primaryColumnName + " = ?" );
+            this.findWhere = SQLQueryTemplate.compile( "select * from " + tableName + " where " );
+            this.delete = SQLQueryTemplate.compile( "delete from " + tableName + " where " + primaryColumnName + " = ?" );
+        }
+
+        /**
+         * Get the "in" query for a number of keys which is a power of two. The templates are immutable, so a race
+         * only compiles the same query twice.
+         */
+        private SQLQueryTemplate findIn( int size )
+        {
+            int index = Integer.numberOfTrailingZeros( size );
+            SQLQueryTemplate template = findIn[ index ];
+            if ( template == null ) {
+                StringBuilder sql = new StringBuilder( "select * from " ).append( tableName )
+                        .append( " where " ).append( primaryColumnName ).append( " in (" );
+                for ( int i = 0; i < size; i++ ) {
+                    sql.append( i == 0 ? "?" : ",?" );
+                }
+                template = SQLQueryTemplate.compile( sql.append( ')' ).toString() );
+                findIn[ index ] = template;
+            }
+            return template;
+        }
+
+    }
+
 }
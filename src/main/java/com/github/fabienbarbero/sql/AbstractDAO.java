@@ -19,6 +19,8 @@
 package com.github.fabienbarbero.sql;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Fabien Barbero
@@ -27,19 +29,23 @@ public abstract class AbstractDAO<E extends Entity>
         extends SQLRunner
         implements DAO<E>, SQLRecordMapper<E>
 {
+    private static final Map<String, SQLQueryTemplate> FIND_ALL_TEMPLATES = new ConcurrentHashMap<>();
+
     protected final String tableName;
+    private final SQLQueryTemplate findAllTemplate;
 
     public AbstractDAO( String tableName, HasSQLConnection conn )
     {
         super( conn );
         this.tableName = tableName;
+        this.findAllTemplate = FIND_ALL_TEMPLATES.computeIfAbsent( tableName, t -> SQLQueryTemplate.compile( "select * from " + t ) );
     }
 
     @Override
     public List<E> findAll()
             throws SQLFaultException
     {
-        return query( this, new SQLQueryBuilder( "select * from " + tableName ) );
+        return query( this, findAllTemplate.bind() );
     }
 
 }
@@ -18,6 +18,10 @@
  */
 package com.github.fabienbarbero.sql;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * DAO using primary key
  *
@@ -39,6 +43,25 @@ public interface BaseDAO<T extends BaseEntity<PK>, PK>
     T find( PK key )
             throws SQLFaultException;
 
+    /**
+     * Find several entities by their primary keys
+     *
+     * @param keys The primary key values
+     * @return The entities found, in the order of the keys. A key without entity is mapped to null.
+     * @throws SQLFaultException SQL error
+     */
+    default Map<PK, T> findAll( Collection<PK> keys )
+            throws SQLFaultException
+    {
+        Map<PK, T> entities = new LinkedHashMap<>();
+        for ( PK key : keys ) {
+            if ( !entities.containsKey( key ) ) {
+                entities.put( key, find( key ) );
+            }
+        }
+        return entities;
+    }
+
     /**
      * Update an entity
      *
@@ -28,4 +28,14 @@ public interface HasSQLConnection
 
     Connection getConnection();
 
+    /**
+     * Get the prepared statements cache bound to the connection
+     *
+     * @return The statements cache, or null if the statements are not cached
+     */
+    default SQLStatementCache getStatementCache()
+    {
+        return null;
+    }
+
 }
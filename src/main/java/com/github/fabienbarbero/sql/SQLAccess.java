@@ -23,6 +23,9 @@ import java.sql.Connection;
 import java.sql.SQLException;
 
 /**
+ * An access to the database without explicit transaction management. When the access is created from a data source,
+ * the connection is only acquired when it is first used. The connection is closed with the access.
+ *
  * @author Fabien Barbero
  */
 public class SQLAccess
@@ -36,15 +39,7 @@ public class SQLAccess
 
     public static SQLAccess of( DataSource ds, boolean readOnly )
     {
-        try {
-            Connection conn = ds.getConnection();
-            conn.setAutoCommit( false );
-            conn.setReadOnly( readOnly );
-            return new SQLAccess( conn );
-
-        } catch ( SQLException ex ) {
-            throw new SQLFaultException( "Error getting sql access", ex );
-        }
+        return new SQLAccess( ds, null, readOnly );
     }
 
     public static SQLAccess of( Connection conn )
@@ -55,32 +50,70 @@ public class SQLAccess
     public static SQLAccess of( Connection conn, boolean readOnly )
     {
         try {
-            conn.setAutoCommit( false );
-            conn.setReadOnly( readOnly );
-            return new SQLAccess( conn );
+            SQLAccess access = new SQLAccess( null, conn, readOnly );
+            access.initialState = SQLTransaction.configure( conn, readOnly, null );
+            return access;
 
         } catch ( SQLException ex ) {
             throw new SQLFaultException( "Error getting sql access", ex );
         }
     }
 
-    private final Connection conn;
+    private final DataSource ds;
+    private final boolean readOnly;
+    private Connection conn;
+    private SQLTransaction.ConnectionState initialState;
 
-    private SQLAccess( Connection conn )
+    private SQLAccess( DataSource ds, Connection conn, boolean readOnly )
     {
+        this.ds = ds;
         this.conn = conn;
+        this.readOnly = readOnly;
     }
 
+    /**
+     * Get the connection used by the access, acquiring it if needed
+     *
+     * @return The connection
+     * @throws SQLFaultException Error acquiring the connection
+     */
     @Override
     public Connection getConnection()
+            throws SQLFaultException
     {
+        if ( conn == null ) {
+            try {
+                Connection connection = ds.getConnection();
+                try {
+                    initialState = SQLTransaction.configure( connection, readOnly, null );
+                } catch ( SQLException ex ) {
+                    connection.close();
+                    throw ex;
+                }
+                conn = connection;
+
+            } catch ( SQLException ex ) {
+                throw new SQLFaultException( "Error getting sql access", ex );
+            }
+        }
         return conn;
     }
 
     @Override
     public void close()
-            throws Exception
+            throws SQLFaultException
     {
-
+        try {
+            if ( conn != null && !conn.isClosed() ) {
+                try {
+                    // The access is never committed
+                    initialState.restore( conn, true );
+                } finally {
+                    conn.close();
+                }
+            }
+        } catch ( SQLException ex ) {
+            throw new SQLFaultException( "Error closing sql access", ex );
+        }
     }
 }
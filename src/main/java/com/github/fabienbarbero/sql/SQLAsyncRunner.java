@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Execute SQL queries asynchronously on an executor. Each query runs in its own transaction, using a connection of the
+ * data source. At most <code>maxConcurrency</code> queries are executed at the same time: the other ones are queued
+ * (without blocking any thread) until a running query completes. Use a single runner per data source, with a
+ * concurrency lower or equal to the connection pool size.
+ * <p>
+ * Any executor can be used, for instance a thread pool or a virtual-thread-per-task executor on recent JVMs.
+ *
+ * @author Fabien Barbero
+ */
+public class SQLAsyncRunner
+{
+
+    private final DataSource ds;
+    private final Executor executor;
+    private final int maxConcurrency;
+    private final Queue<Task<?>> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger active = new AtomicInteger();
+
+    /**
+     * Create a new runner
+     *
+     * @param ds             The data source providing the connections
+     * @param executor       The executor running the queries
+     * @param maxConcurrency The maximum number of queries executed at the same time
+     */
+    public SQLAsyncRunner( DataSource ds, Executor executor, int maxConcurrency )
+    {
+        if ( maxConcurrency <= 0 ) {
+            throw new IllegalArgumentException( "Invalid concurrency: " + maxConcurrency );
+        }
+        this.ds = ds;
+        this.executor = executor;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Select entities from a given SQL query
+     *
+     * @param <T>    The entity type to return
+     * @param mapper The mapper used to build Java entities
+     * @param query  The query to select entities
+     * @return The future entities found
+     * @see SQLRunner#query(SQLRecordMapper, SQLQueryBuilder)
+     */
+    public <T> CompletableFuture<List<T>> query( SQLRecordMapper<T> mapper, SQLQueryBuilder query )
+    {
+        return submit( false, runner -> runner.query( mapper, query ) );
+    }
+
+    /**
+     * Select a single entity from a given SQL query
+     *
+     * @param <T>    The entity type to return
+     * @param mapper The mapper used to build Java entity
+     * @param query  The query to select the entity
+     * @return The future entity found (which may be null)
+     * @see SQLRunner#querySingle(SQLRecordMapper, SQLQueryBuilder)
+     */
+    public <T> CompletableFuture<T> querySingle( SQLRecordMapper<T> mapper, SQLQueryBuilder query )
+    {
+        return submit( false, runner -> runner.querySingle( mapper, query ) );
+    }
+
+    /**
+     * Execute a "count" query
+     *
+     * @param query The query to count entities. It must starts with "select count(...)".
+     * @return The future counted entities
+     * @see SQLRunner#count(SQLQueryBuilder)
+     */
+    public CompletableFuture<Long> count( SQLQueryBuilder query )
+    {
+        return submit( false, runner -> runner.count( query ) );
+    }
+
+    /**
+     * Execute a query for UPDATE, INSERT or DELETE. The transaction is committed once the query is executed.
+     *
+     * @param query The query to execute
+     * @return The future modified record count
+     * @see SQLRunner#execute(SQLQueryBuilder)
+     */
+    public CompletableFuture<Integer> execute( SQLQueryBuilder query )
+    {
+        return submit( false, runner -> runner.execute( query ) );
+    }
+
+    /**
+     * Execute a unit of work in a new transaction. The transaction is committed if the work completes normally and
+     * rolled back otherwise. The other methods of this runner use read/write transactions, since some drivers (like
+     * SQLite) cannot switch an open connection to read-only mode.
+     *
+     * @param <T>      The result type
+     * @param readOnly Indicates if the transaction must be read-only
+     * @param work     The work to execute
+     * @return The future work result
+     */
+    public <T> CompletableFuture<T> submit( boolean readOnly, Function<SQLRunner, T> work )
+    {
+        Task<T> task = new Task<>( readOnly, work );
+        pending.add( task );
+        drain();
+        return task.future;
+    }
+
+    /**
+     * Get the number of queries currently executed
+     *
+     * @return The active queries count
+     */
+    public int getActiveCount()
+    {
+        return active.get();
+    }
+
+    /**
+     * Get the number of queries waiting to be executed
+     *
+     * @return The queued queries count
+     */
+    public int getQueuedCount()
+    {
+        return pending.size();
+    }
+
+    private void drain()
+    {
+        while ( !pending.isEmpty() ) {
+            int count = active.get();
+            if ( count >= maxConcurrency ) {
+                // A running task will drain the queue when completing
+                return;
+            }
+            if ( !active.compareAndSet( count, count + 1 ) ) {
+                continue;
+            }
+
+            Task<?> task = pending.poll();
+            if ( task == null ) {
+                active.decrementAndGet();
+                continue;
+            }
+
+            try {
+                executor.execute( task );
+            } catch ( RuntimeException ex ) {
+                active.decrementAndGet();
+                task.future.completeExceptionally( ex );
+            }
+        }
+    }
+
+    private final class Task<T>
+            implements Runnable
+    {
+
+        private final boolean readOnly;
+        private final Function<SQLRunner, T> work;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private Task( boolean readOnly, Function<SQLRunner, T> work )
+        {
+            this.readOnly = readOnly;
+            this.work = work;
+        }
+
+        @Override
+        public void run()
+        {
+            try {
+                T result;
+                try ( SQLTransaction tx = SQLTransaction.begin( ds, readOnly, null ) ) {
+                    try {
+                        result = work.apply( new SQLRunner( tx ) );
+                    } catch ( RuntimeException ex ) {
+                        tx.rollback();
+                        throw ex;
+                    }
+                    tx.commit();
+                }
+                future.complete( result );
+
+            } catch ( Throwable ex ) {
+                future.completeExceptionally( ex );
+
+            } finally {
+                active.decrementAndGet();
+                drain();
+            }
+        }
+    }
+
+}
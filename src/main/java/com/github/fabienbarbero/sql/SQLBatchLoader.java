@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Load entities by primary key, coalescing the concurrent requests. The keys requested during a short window are
+ * loaded together using {@link BaseDAO#findAll(java.util.Collection)}, in a single transaction. A batch is sent
+ * before the end of the window when it reaches its maximum size. The callers requesting a key which is already being
+ * loaded share the same result.
+ * <p>
+ * The batches are executed on the scheduler, which should have enough threads for the expected number of concurrent
+ * batches.
+ *
+ * @param <E>  The entity type
+ * @param <PK> The primary key type
+ * @author Fabien Barbero
+ */
+public class SQLBatchLoader<E extends BaseEntity<PK>, PK>
+{
+
+    private final DataSource ds;
+    private final Function<SQLTransaction, ? extends BaseDAO<E, PK>> daoFactory;
+    private final ScheduledExecutorService scheduler;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final Object lock = new Object();
+    private final Map<PK, CompletableFuture<E>> inFlight = new HashMap<>();
+    private Map<PK, CompletableFuture<E>> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> timer;
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    /**
+     * Create a new loader
+     *
+     * @param ds           The data source providing the connections
+     * @param daoFactory   The function creating a DAO for a transaction
+     * @param scheduler    The scheduler used to run the batches
+     * @param window       The maximum time a request waits for other requests
+     * @param unit         The window time unit
+     * @param maxBatchSize The maximum number of keys loaded by a batch
+     */
+    public SQLBatchLoader( DataSource ds,
+                           Function<SQLTransaction, ? extends BaseDAO<E, PK>> daoFactory,
+                           ScheduledExecutorService scheduler,
+                           long window, TimeUnit unit,
+                           int maxBatchSize )
+    {
+        if ( maxBatchSize <= 0 ) {
+            throw new IllegalArgumentException( "Invalid batch size: " + maxBatchSize );
+        }
+        this.ds = ds;
+        this.daoFactory = daoFactory;
+        this.scheduler = scheduler;
+        this.windowNanos = unit.toNanos( window );
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Load an entity asynchronously
+     *
+     * @param key The primary key value
+     * @return The future entity (which may be null)
+     */
+    public CompletableFuture<E> load( PK key )
+    {
+        loads.increment();
+        Map<PK, CompletableFuture<E>> batch = null;
+        RuntimeException error = null;
+        CompletableFuture<E> future;
+        synchronized ( lock ) {
+            future = inFlight.get( key );
+            if ( future != null ) {
+                coalesced.increment();
+                return future;
+            }
+
+            future = new CompletableFuture<>();
+            inFlight.put( key, future );
+            pending.put( key, future );
+            if ( pending.size() >= maxBatchSize ) {
+                batch = takePending();
+            } else if ( pending.size() == 1 ) {
+                try {
+                    timer = scheduler.schedule( this::flush, windowNanos, TimeUnit.NANOSECONDS );
+                } catch ( RuntimeException ex ) {
+                    // The scheduler has been shut down: the request would never be sent
+                    batch = takePending();
+                    error = ex;
+                }
+            }
+        }
+
+        if ( error != null ) {
+            complete( batch, null, error );
+        } else if ( batch != null ) {
+            dispatch( batch );
+        }
+        return future;
+    }
+
+    /**
+     * Load an entity, waiting for the batch to complete
+     *
+     * @param key The primary key value
+     * @return The entity found, or null
+     * @throws SQLFaultException SQL error
+     */
+    public E find( PK key )
+            throws SQLFaultException
+    {
+        try {
+            return load( key ).join();
+        } catch ( CompletionException ex ) {
+            if ( ex.getCause() instanceof RuntimeException ) {
+                throw ( RuntimeException ) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Send the pending requests without waiting for the end of the window
+     */
+    public void flush()
+    {
+        Map<PK, CompletableFuture<E>> batch;
+        synchronized ( lock ) {
+            if ( pending.isEmpty() ) {
+                return;
+            }
+            batch = takePending();
+        }
+        dispatch( batch );
+    }
+
+    /**
+     * Get the number of entities requested
+     *
+     * @return The requests count
+     */
+    public long getLoadCount()
+    {
+        return loads.sum();
+    }
+
+    /**
+     * Get the number of requests which have shared the result of another request for the same key
+     *
+     * @return The coalesced requests count
+     */
+    public long getCoalescedCount()
+    {
+        return coalesced.sum();
+    }
+
+    /**
+     * Get the number of batches sent to the database
+     *
+     * @return The batches count
+     */
+    public long getBatchCount()
+    {
+        return batches.sum();
+    }
+
+    private Map<PK, CompletableFuture<E>> takePending()
+    {
+        Map<PK, CompletableFuture<E>> batch = pending;
+        pending = new LinkedHashMap<>();
+        if ( timer != null ) {
+            timer.cancel( false );
+            timer = null;
+        }
+        return batch;
+    }
+
+    private void dispatch( Map<PK, CompletableFuture<E>> batch )
+    {
+        try {
+            scheduler.execute( () -> run( batch ) );
+        } catch ( RuntimeException ex ) {
+            complete( batch, null, ex );
+        }
+    }
+
+    private void run( Map<PK, CompletableFuture<E>> batch )
+    {
+        batches.increment();
+        try ( SQLTransaction tx = SQLTransaction.begin( ds ) ) {
+            complete( batch, daoFactory.apply( tx ).findAll( batch.keySet() ), null );
+        } catch ( Throwable ex ) {
+            complete( batch, null, ex );
+        }
+    }
+
+    private void complete( Map<PK, CompletableFuture<E>> batch, Map<PK, E> entities, Throwable error )
+    {
+        synchronized ( lock ) {
+            batch.forEach( inFlight::remove );
+        }
+        batch.forEach( ( key, future ) -> {
+            if ( error == null ) {
+                future.complete( entities.get( key ) );
+            } else {
+                future.completeExceptionally( error );
+            }
+        } );
+    }
+
+}
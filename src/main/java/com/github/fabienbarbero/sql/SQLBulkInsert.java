@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Insert rows in a table using multi-row "insert into ... values (...),(...),..." queries. Several rows are sent in a
+ * single statement, which is faster than JDBC batches with the drivers which do not rewrite them (like SQLite, or
+ * MySQL without <code>rewriteBatchedStatements</code>).
+ * <p>
+ * The number of rows per statement is limited by the driver bound parameters limit. To keep the number of distinct
+ * statements low (and cacheable), the remaining rows are inserted using statements whose rows count is a power of two.
+ * An instance can be shared and reused: the queries are built once per rows count.
+ *
+ * @author Fabien Barbero
+ */
+public class SQLBulkInsert
+{
+
+    /**
+     * The default maximum number of bound parameters per statement (SQLite before 3.32)
+     */
+    public static final int DEFAULT_MAX_PARAMETERS = 999;
+
+    private final String tableName;
+    private final String[] columns;
+    private final Map<Integer, String> queries = new ConcurrentHashMap<>();
+    private volatile int maxParameters = DEFAULT_MAX_PARAMETERS;
+    private volatile int maxRows = 500;
+
+    /**
+     * Create a new bulk insert
+     *
+     * @param tableName The table name
+     * @param columns   The inserted columns. The rows values must be in the same order.
+     */
+    public SQLBulkInsert( String tableName, String... columns )
+    {
+        if ( columns.length == 0 ) {
+            throw new IllegalArgumentException( "No columns to insert" );
+        }
+        this.tableName = tableName;
+        this.columns = columns.clone();
+    }
+
+    /**
+     * Set the maximum number of bound parameters per statement. It depends on the driver (for instance 999 or 32766 for
+     * SQLite, 65535 for MySQL and PostgreSQL).
+     *
+     * @param maxParameters The maximum parameters count
+     */
+    public void setMaxParameters( int maxParameters )
+    {
+        if ( maxParameters < columns.length ) {
+            throw new IllegalArgumentException( "Invalid parameters count: " + maxParameters );
+        }
+        this.maxParameters = maxParameters;
+    }
+
+    /**
+     * Set the maximum number of rows per statement. The default value is 500.
+     *
+     * @param maxRows The maximum rows count
+     */
+    public void setMaxRows( int maxRows )
+    {
+        if ( maxRows <= 0 ) {
+            throw new IllegalArgumentException( "Invalid rows count: " + maxRows );
+        }
+        this.maxRows = maxRows;
+    }
+
+    /**
+     * Insert rows
+     *
+     * @param runner The runner executing the queries
+     * @param rows   The rows values
+     * @return The inserted rows count
+     * @throws SQLFaultException Query error
+     */
+    public int insert( SQLRunner runner, Iterable<Object[]> rows )
+            throws SQLFaultException
+    {
+        int chunkRows = Math.min( maxRows, maxParameters / columns.length );
+        Object[] params = new Object[ chunkRows * columns.length ];
+        int pending = 0;
+        int count = 0;
+
+        for ( Object[] row : rows ) {
+            if ( row.length != columns.length ) {
+                throw new IllegalArgumentException( "Invalid row length: " + row.length );
+            }
+            System.arraycopy( row, 0, params, pending * columns.length, columns.length );
+            if ( ++pending == chunkRows ) {
+                count += execute( runner, params, 0, pending );
+                pending = 0;
+            }
+        }
+
+        // Insert the remaining rows using power of two chunks
+        int offset = 0;
+        while ( pending > 0 ) {
+            int size = Integer.highestOneBit( pending );
+            count += execute( runner, params, offset, size );
+            offset += size;
+            pending -= size;
+        }
+        return count;
+    }
+
+    private int execute( SQLRunner runner, Object[] params, int offsetRows, int rows )
+    {
+        Object[] values = offsetRows == 0 && rows * columns.length == params.length
+                          ? params
+                          : Arrays.copyOfRange( params, offsetRows * columns.length, ( offsetRows + rows ) * columns.length );
+        // The chunk is executed before the parameters array is reused, so it does not need to be copied
+        return runner.execute( SQLQueryBuilder.of( getQuery( rows ), values ) );
+    }
+
+    private String getQuery( int rows )
+    {
+        return queries.computeIfAbsent( rows, this::buildQuery );
+    }
+
+    private String buildQuery( int rows )
+    {
+        StringBuilder sb = new StringBuilder( "insert into " ).append( tableName ).append( " (" );
+        StringBuilder values = new StringBuilder( "(" );
+        for ( int i = 0; i < columns.length; i++ ) {
+            if ( i > 0 ) {
+                sb.append( ", " );
+                values.append( ',' );
+            }
+            sb.append( columns[ i ] );
+            values.append( '?' );
+        }
+        values.append( ')' );
+
+        sb.append( ") values " );
+        for ( int i = 0; i < rows; i++ ) {
+            if ( i > 0 ) {
+                sb.append( ',' );
+            }
+            sb.append( values );
+        }
+        return sb.toString();
+    }
+
+}
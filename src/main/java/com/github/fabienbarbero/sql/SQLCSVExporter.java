@@ -0,0 +1,371 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Export the results of a query to a CSV (or TSV...) file. The rows are read from the result set and encoded directly
+ * into a direct byte buffer which is written to a channel, so the memory usage does not depend on the results size. No
+ * entity is built. The buffers are reused between exports, so an exporter must not be used by several threads at the
+ * same time.
+ *
+ * @author Fabien Barbero
+ */
+public class SQLCSVExporter
+{
+
+    private char delimiter = ',';
+    private char quote = '"';
+    private String lineSeparator = "\r\n";
+    private String nullValue = "";
+    private boolean header = true;
+    private QuoteMode quoteMode = QuoteMode.MINIMAL;
+    private Charset charset = StandardCharsets.UTF_8;
+    private int bufferSize = 64 * 1024;
+    private Integer fetchSize;
+
+    private CharsetEncoder encoder;
+    private CharBuffer chars;
+    private ByteBuffer bytes;
+    private WritableByteChannel channel;
+    private long bytesWritten;
+
+    /**
+     * Set the values delimiter. The default value is ','.
+     *
+     * @param delimiter The delimiter
+     */
+    public void setDelimiter( char delimiter )
+    {
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * Set the character used to quote the values. The default value is '"'.
+     *
+     * @param quote The quote character
+     */
+    public void setQuote( char quote )
+    {
+        this.quote = quote;
+    }
+
+    /**
+     * Set the quoting mode. The default value is {@link QuoteMode#MINIMAL}.
+     *
+     * @param quoteMode The quoting mode
+     */
+    public void setQuoteMode( QuoteMode quoteMode )
+    {
+        this.quoteMode = quoteMode;
+    }
+
+    /**
+     * Set the lines separator. The default value is "\r\n".
+     *
+     * @param lineSeparator The lines separator
+     */
+    public void setLineSeparator( String lineSeparator )
+    {
+        this.lineSeparator = lineSeparator;
+    }
+
+    /**
+     * Set the value written for the null values. The default value is an empty string.
+     *
+     * @param nullValue The null value
+     */
+    public void setNullValue( String nullValue )
+    {
+        this.nullValue = nullValue;
+    }
+
+    /**
+     * Indicates if the columns names must be written on the first line. The default value is true.
+     *
+     * @param header true to write the header
+     */
+    public void setHeader( boolean header )
+    {
+        this.header = header;
+    }
+
+    /**
+     * Set the charset used to encode the file. The default value is UTF-8.
+     *
+     * @param charset The charset
+     */
+    public void setCharset( Charset charset )
+    {
+        this.charset = charset;
+        this.encoder = null;
+    }
+
+    /**
+     * Set the size of the buffer written to the channel. The default value is 64KB.
+     *
+     * @param bufferSize The buffer size in bytes
+     */
+    public void setBufferSize( int bufferSize )
+    {
+        if ( bufferSize < 16 ) {
+            throw new IllegalArgumentException( "Invalid buffer size: " + bufferSize );
+        }
+        this.bufferSize = bufferSize;
+        this.bytes = null;
+    }
+
+    /**
+     * Set the fetch size of the query
+     *
+     * @param fetchSize The fetch size. The value depends on the SQL driver. If null, the driver default is used.
+     */
+    public void setFetchSize( Integer fetchSize )
+    {
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Export the results of a query to a channel. The channel is not closed.
+     *
+     * @param runner  The runner executing the query
+     * @param query   The query selecting the rows to export
+     * @param channel The channel where the rows are written
+     * @return The export statistics
+     * @throws SQLFaultException Query error
+     * @throws IOException       Write error
+     */
+    public Result export( SQLRunner runner, SQLQueryBuilder query, WritableByteChannel channel )
+            throws SQLFaultException, IOException
+    {
+        if ( encoder == null ) {
+            encoder = charset.newEncoder();
+        }
+        if ( bytes == null ) {
+            bytes = ByteBuffer.allocateDirect( bufferSize );
+            chars = CharBuffer.allocate( bufferSize );
+        }
+        encoder.reset();
+        bytes.clear();
+        chars.clear();
+        this.channel = channel;
+        this.bytesWritten = 0;
+
+        try {
+            long rows = 0;
+            try ( SQLIterator<SQLRecord> it = runner.queryIterator( record -> record, fetchSize, false, query ) ) {
+                List<SQLRecord.Column> columns = it.getColumns();
+                int count = columns.size();
+                if ( header ) {
+                    for ( int i = 0; i < count; i++ ) {
+                        if ( i > 0 ) {
+                            append( delimiter );
+                        }
+                        appendValue( columns.get( i ).getName() );
+                    }
+                    append( lineSeparator );
+                }
+
+                while ( it.hasNext() ) {
+                    SQLRecord record = it.next();
+                    for ( int i = 1; i <= count; i++ ) {
+                        if ( i > 1 ) {
+                            append( delimiter );
+                        }
+                        String value = record.getStringOrDefault( i, null );
+                        if ( value == null ) {
+                            append( nullValue );
+                        } else {
+                            appendValue( value );
+                        }
+                    }
+                    append( lineSeparator );
+                    rows++;
+                }
+            }
+
+            // Flush the remaining characters
+            encode( true );
+            while ( encoder.flush( bytes ) == CoderResult.OVERFLOW ) {
+                drain();
+            }
+            drain();
+            return new Result( rows, bytesWritten );
+
+        } finally {
+            this.channel = null;
+        }
+    }
+
+    private void appendValue( String value )
+            throws IOException
+    {
+        boolean quoted;
+        switch ( quoteMode ) {
+            case ALL:
+                quoted = true;
+                break;
+            case NONE:
+                quoted = false;
+                break;
+            default:
+                quoted = needsQuotes( value );
+        }
+
+        if ( !quoted ) {
+            append( value );
+            return;
+        }
+        append( quote );
+        for ( int i = 0; i < value.length(); i++ ) {
+            char c = value.charAt( i );
+            if ( c == quote ) {
+                append( quote );
+            }
+            append( c );
+        }
+        append( quote );
+    }
+
+    private boolean needsQuotes( String value )
+    {
+        for ( int i = 0; i < value.length(); i++ ) {
+            char c = value.charAt( i );
+            if ( c == delimiter || c == quote || c == '\n' || c == '\r' ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void append( String value )
+            throws IOException
+    {
+        for ( int i = 0; i < value.length(); i++ ) {
+            append( value.charAt( i ) );
+        }
+    }
+
+    private void append( char c )
+            throws IOException
+    {
+        chars.put( c );
+        if ( !chars.hasRemaining() ) {
+            encode( false );
+        }
+    }
+
+    private void encode( boolean endOfInput )
+            throws IOException
+    {
+        chars.flip();
+        while ( true ) {
+            CoderResult result = encoder.encode( chars, bytes, endOfInput );
+            if ( result.isOverflow() ) {
+                drain();
+            } else if ( result.isError() ) {
+                result.throwException();
+            } else {
+                break;
+            }
+        }
+        chars.compact();
+    }
+
+    private void drain()
+            throws IOException
+    {
+        bytes.flip();
+        while ( bytes.hasRemaining() ) {
+            bytesWritten += channel.write( bytes );
+        }
+        bytes.clear();
+    }
+
+    /**
+     * The quoting modes
+     */
+    public enum QuoteMode
+    {
+        /**
+         * Only the values containing a delimiter, a quote or a line break are quoted
+         */
+        MINIMAL,
+        /**
+         * All the values are quoted
+         */
+        ALL,
+        /**
+         * The values are never quoted
+         */
+        NONE
+    }
+
+    /**
+     * The statistics of an export
+     */
+    public static final class Result
+    {
+
+        private final long rows;
+        private final long bytes;
+
+        private Result( long rows, long bytes )
+        {
+            this.rows = rows;
+            this.bytes = bytes;
+        }
+
+        /**
+         * Get the number of exported rows (without the header)
+         *
+         * @return The rows count
+         */
+        public long getRows()
+        {
+            return rows;
+        }
+
+        /**
+         * Get the number of bytes written to the channel
+         *
+         * @return The bytes count
+         */
+        public long getBytes()
+        {
+            return bytes;
+        }
+
+        @Override
+        public String toString()
+        {
+            return rows + " rows, " + bytes + " bytes";
+        }
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Resolves the columns labels of a result set to their index. The labels (and types) are read once from the result set
+ * metadata, the first time a column is looked up, and shared by all the rows of the result set.
+ *
+ * @author Fabien Barbero
+ */
+final class SQLColumnIndexes
+{
+
+    private final ResultSet rs;
+    private Map<String, Integer> labels;
+    private Map<String, Integer> upperLabels;
+    private int[] types;
+
+    SQLColumnIndexes( ResultSet rs )
+    {
+        this.rs = rs;
+    }
+
+    /**
+     * Get the index of a column. The lookup is case insensitive, and the first column is returned when several
+     * columns have the same label.
+     *
+     * @param label The column label
+     * @return The column index (starting at 1)
+     * @throws SQLException If the column does not exist
+     */
+    int indexOf( String label )
+            throws SQLException
+    {
+        if ( labels == null ) {
+            load();
+        }
+        Integer index = labels.get( label );
+        if ( index == null ) {
+            index = upperLabels.get( label.toUpperCase( Locale.ROOT ) );
+            if ( index == null ) {
+                // Let the driver resolve the column (or report the error)
+                return rs.findColumn( label );
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Get the SQL type of a column
+     *
+     * @param column The column index (starting at 1)
+     * @return The type (see {@link java.sql.Types})
+     * @throws SQLException If the type cannot be read
+     */
+    int typeOf( int column )
+            throws SQLException
+    {
+        if ( types == null ) {
+            ResultSetMetaData metaData = rs.getMetaData();
+            int[] array = new int[ metaData.getColumnCount() + 1 ];
+            for ( int i = 1; i < array.length; i++ ) {
+                array[ i ] = metaData.getColumnType( i );
+            }
+            types = array;
+        }
+        return column < types.length ? types[ column ] : Types.OTHER;
+    }
+
+    private void load()
+            throws SQLException
+    {
+        ResultSetMetaData metaData = rs.getMetaData();
+        int count = metaData.getColumnCount();
+        Map<String, Integer> map = new HashMap<>( count * 2 );
+        Map<String, Integer> upperMap = new HashMap<>( count * 2 );
+        for ( int i = 1; i <= count; i++ ) {
+            String label = metaData.getColumnLabel( i );
+            map.putIfAbsent( label, i );
+            upperMap.putIfAbsent( label.toUpperCase( Locale.ROOT ), i );
+        }
+        upperLabels = upperMap;
+        labels = map;
+    }
+
+}
@@ -0,0 +1,619 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * A simple pool of connections, itself usable as a {@link DataSource}. Closing a connection of the pool gives it back
+ * to the pool instead of closing the physical connection.
+ * <p>
+ * The idle connections are kept in a lock-free stack, so the most recently used connections are reused first and the
+ * other ones can expire. A connection idle for more than the idle timeout is closed, unless the pool would contain
+ * less than its minimum size. The borrowed connections are limited by the maximum size: when no connection is
+ * available, the callers wait until the borrow timeout.
+ * <p>
+ * A connection idle for more than the validation interval is validated before being borrowed. When a connection is
+ * returned, an uncommitted transaction is rolled back and the auto-commit, read-only and isolation settings modified
+ * by the caller are reset. A connection which cannot be reset is closed. The pool keeps track of these settings, so
+ * reading them or setting them to their current value does not reach the driver.
+ *
+ * @author Fabien Barbero
+ */
+public class SQLConnectionPool
+        implements DataSource, AutoCloseable
+{
+
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger( SQLConnectionPool.class );
+
+    private final DataSource ds;
+    private final int minSize;
+    private final int maxSize;
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger total = new AtomicInteger();
+    private long borrowTimeoutNanos = TimeUnit.SECONDS.toNanos( 30 );
+    private long idleTimeoutNanos = TimeUnit.MINUTES.toNanos( 10 );
+    private long validationIntervalNanos = TimeUnit.SECONDS.toNanos( 1 );
+    private int validationTimeout = 5;
+    private volatile boolean closed;
+
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+
+    /**
+     * Create a new pool. The minimum number of connections are opened immediately.
+     *
+     * @param ds      The data source providing the physical connections
+     * @param minSize The minimum number of connections kept open
+     * @param maxSize The maximum number of connections
+     * @throws SQLFaultException Error opening the connections
+     */
+    public SQLConnectionPool( DataSource ds, int minSize, int maxSize )
+            throws SQLFaultException
+    {
+        if ( maxSize <= 0 || minSize < 0 || minSize > maxSize ) {
+            throw new IllegalArgumentException( "Invalid pool size: " + minSize + "-" + maxSize );
+        }
+        this.ds = ds;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.permits = new Semaphore( maxSize, true );
+
+        try {
+            for ( int i = 0; i < minSize; i++ ) {
+                idle.offerFirst( open() );
+            }
+        } catch ( SQLException ex ) {
+            close();
+            throw new SQLFaultException( "Error opening pooled connections", ex );
+        }
+    }
+
+    /**
+     * Set the maximum time to wait for a connection. The default value is 30 seconds.
+     *
+     * @param timeout The borrow timeout
+     * @param unit    The timeout unit
+     */
+    public void setBorrowTimeout( long timeout, TimeUnit unit )
+    {
+        this.borrowTimeoutNanos = unit.toNanos( timeout );
+    }
+
+    /**
+     * Set the time after which an idle connection is closed. The default value is 10 minutes.
+     *
+     * @param timeout The idle timeout
+     * @param unit    The timeout unit
+     */
+    public void setIdleTimeout( long timeout, TimeUnit unit )
+    {
+        this.idleTimeoutNanos = unit.toNanos( timeout );
+    }
+
+    /**
+     * Set the idle time after which a connection is validated before being borrowed. The default value is 1 second.
+     *
+     * @param interval The validation interval
+     * @param unit     The interval unit
+     */
+    public void setValidationInterval( long interval, TimeUnit unit )
+    {
+        this.validationIntervalNanos = unit.toNanos( interval );
+    }
+
+    /**
+     * Set the timeout of the connections validation. The default value is 5 seconds.
+     *
+     * @param seconds The validation timeout in seconds
+     * @see Connection#isValid(int)
+     */
+    public void setValidationTimeout( int seconds )
+    {
+        this.validationTimeout = seconds;
+    }
+
+    @Override
+    public Connection getConnection()
+            throws SQLException
+    {
+        if ( closed ) {
+            throw new SQLException( "The connection pool is closed" );
+        }
+
+        long start = System.nanoTime();
+        boolean acquired = permits.tryAcquire();
+        if ( !acquired ) {
+            try {
+                acquired = permits.tryAcquire( borrowTimeoutNanos, TimeUnit.NANOSECONDS );
+            } catch ( InterruptedException ex ) {
+                Thread.currentThread().interrupt();
+                throw new SQLException( "Interrupted while waiting for a connection", ex );
+            }
+        }
+        long wait = System.nanoTime() - start;
+        waitNanos.add( wait );
+        if ( wait > maxWaitNanos.get() ) {
+            maxWaitNanos.accumulateAndGet( wait, Math::max );
+        }
+        if ( !acquired ) {
+            timeouts.increment();
+            throw new SQLTransientConnectionException( "Timeout waiting for a connection (" + maxSize + " connections used)" );
+        }
+
+        try {
+            PooledConnection pooled = borrowIdle();
+            if ( pooled == null ) {
+                pooled = open();
+            }
+            borrows.increment();
+            return pooled.borrow();
+
+        } catch ( SQLException | RuntimeException ex ) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    @Override
+    public Connection getConnection( String username, String password )
+            throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException( "The pooled connections use the credentials of the data source" );
+    }
+
+    /**
+     * Get the number of borrowed connections
+     *
+     * @return The active connections count
+     */
+    public int getActiveCount()
+    {
+        return maxSize - permits.availablePermits();
+    }
+
+    /**
+     * Get the number of idle connections
+     *
+     * @return The idle connections count
+     */
+    public int getIdleCount()
+    {
+        return idle.size();
+    }
+
+    /**
+     * Get the number of physical connections
+     *
+     * @return The connections count
+     */
+    public int getTotalCount()
+    {
+        return total.get();
+    }
+
+    /**
+     * Get the number of callers waiting for a connection
+     *
+     * @return The waiting callers count
+     */
+    public int getWaitingCount()
+    {
+        return permits.getQueueLength();
+    }
+
+    /**
+     * Get the ratio of borrowed connections
+     *
+     * @return The active connections count divided by the maximum size
+     */
+    public double getUtilization()
+    {
+        return ( double ) getActiveCount() / maxSize;
+    }
+
+    /**
+     * Get the number of connections borrowed since the pool creation
+     *
+     * @return The borrows count
+     */
+    public long getBorrowCount()
+    {
+        return borrows.sum();
+    }
+
+    /**
+     * Get the mean time spent waiting for a connection
+     *
+     * @return The mean wait time in nanoseconds
+     */
+    public long getMeanWaitNanos()
+    {
+        long count = borrows.sum() + timeouts.sum();
+        return count == 0 ? 0 : waitNanos.sum() / count;
+    }
+
+    /**
+     * Get the maximum time spent waiting for a connection
+     *
+     * @return The maximum wait time in nanoseconds
+     */
+    public long getMaxWaitNanos()
+    {
+        return maxWaitNanos.get();
+    }
+
+    /**
+     * Get the number of callers which did not get a connection before the borrow timeout
+     *
+     * @return The timeouts count
+     */
+    public long getTimeoutCount()
+    {
+        return timeouts.sum();
+    }
+
+    /**
+     * Get the number of physical connections opened since the pool creation
+     *
+     * @return The opened connections count
+     */
+    public long getCreatedCount()
+    {
+        return created.sum();
+    }
+
+    /**
+     * Get the number of physical connections closed because they were invalid, expired or could not be reset
+     *
+     * @return The discarded connections count
+     */
+    public long getDiscardedCount()
+    {
+        return discarded.sum();
+    }
+
+    /**
+     * Close the pool and the idle connections. The borrowed connections are closed when they are given back.
+     */
+    @Override
+    public void close()
+    {
+        closed = true;
+        PooledConnection pooled;
+        while ( ( pooled = idle.pollFirst() ) != null ) {
+            pooled.closePhysical();
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter()
+            throws SQLException
+    {
+        return ds.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter( PrintWriter out )
+            throws SQLException
+    {
+        ds.setLogWriter( out );
+    }
+
+    @Override
+    public void setLoginTimeout( int seconds )
+            throws SQLException
+    {
+        ds.setLoginTimeout( seconds );
+    }
+
+    @Override
+    public int getLoginTimeout()
+            throws SQLException
+    {
+        return ds.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger()
+            throws SQLFeatureNotSupportedException
+    {
+        return ds.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap( Class<T> iface )
+            throws SQLException
+    {
+        if ( iface.isInstance( this ) ) {
+            return iface.cast( this );
+        }
+        return ds.unwrap( iface );
+    }
+
+    @Override
+    public boolean isWrapperFor( Class<?> iface )
+            throws SQLException
+    {
+        return iface.isInstance( this ) || ds.isWrapperFor( iface );
+    }
+
+    private PooledConnection open()
+            throws SQLException
+    {
+        total.incrementAndGet();
+        try {
+            PooledConnection pooled = new PooledConnection( ds.getConnection() );
+            created.increment();
+            return pooled;
+        } catch ( SQLException | RuntimeException ex ) {
+            total.decrementAndGet();
+            throw ex;
+        }
+    }
+
+    private PooledConnection borrowIdle()
+    {
+        PooledConnection pooled;
+        while ( ( pooled = idle.pollFirst() ) != null ) {
+            if ( System.nanoTime() - pooled.lastUsed < validationIntervalNanos || pooled.isValid() ) {
+                return pooled;
+            }
+            discard( pooled );
+        }
+        return null;
+    }
+
+    private void giveBack( PooledConnection pooled )
+    {
+        try {
+            if ( closed || !pooled.reset() ) {
+                discard( pooled );
+            } else {
+                pooled.lastUsed = System.nanoTime();
+                idle.offerFirst( pooled );
+            }
+        } finally {
+            permits.release();
+        }
+        evictIdle();
+    }
+
+    private void evictIdle()
+    {
+        // The oldest connections are at the end of the stack
+        long now = System.nanoTime();
+        Iterator<PooledConnection> it = idle.descendingIterator();
+        while ( it.hasNext() && total.get() > minSize ) {
+            PooledConnection pooled = it.next();
+            if ( now - pooled.lastUsed < idleTimeoutNanos ) {
+                return;
+            }
+            if ( idle.removeLastOccurrence( pooled ) ) {
+                discard( pooled );
+            }
+        }
+    }
+
+    private void discard( PooledConnection pooled )
+    {
+        discarded.increment();
+        pooled.closePhysical();
+    }
+
+    private final class PooledConnection
+            implements InvocationHandler
+    {
+
+        private final Connection physical;
+        private final boolean defaultAutoCommit;
+        private final boolean defaultReadOnly;
+        private final int defaultIsolation;
+        private volatile long lastUsed = System.nanoTime();
+        private Connection proxy;
+        private boolean autoCommit;
+        private boolean readOnly;
+        private int isolation;
+
+        private PooledConnection( Connection physical )
+                throws SQLException
+        {
+            this.physical = physical;
+            try {
+                this.defaultAutoCommit = physical.getAutoCommit();
+                this.defaultReadOnly = physical.isReadOnly();
+                this.defaultIsolation = physical.getTransactionIsolation();
+                this.autoCommit = defaultAutoCommit;
+                this.readOnly = defaultReadOnly;
+                this.isolation = defaultIsolation;
+            } catch ( SQLException ex ) {
+                physical.close();
+                throw ex;
+            }
+        }
+
+        private Connection borrow()
+        {
+            proxy = ( Connection ) Proxy.newProxyInstance( Connection.class.getClassLoader(),
+                                                           new Class<?>[]{ Connection.class },
+                                                           this );
+            return proxy;
+        }
+
+        @Override
+        public Object invoke( Object source, Method method, Object[] args )
+                throws Throwable
+        {
+            String name = method.getName();
+            if ( source != proxy ) {
+                // A connection given back to the pool
+                switch ( name ) {
+                    case "close":
+                        return null;
+                    case "isClosed":
+                        return true;
+                    case "equals":
+                        return source == args[ 0 ];
+                    case "hashCode":
+                        return System.identityHashCode( source );
+                    case "toString":
+                        return "Closed pooled connection";
+                    default:
+                        throw new SQLException( "The connection is closed" );
+                }
+            }
+
+            switch ( name ) {
+                case "close":
+                    proxy = null;
+                    giveBack( this );
+                    return null;
+                case "equals":
+                    return source == args[ 0 ];
+                case "hashCode":
+                    return System.identityHashCode( source );
+                case "unwrap":
+                    if ( ( ( Class<?> ) args[ 0 ] ).isInstance( source ) ) {
+                        return source;
+                    }
+                    break;
+                case "isWrapperFor":
+                    if ( ( ( Class<?> ) args[ 0 ] ).isInstance( source ) ) {
+                        return true;
+                    }
+                    break;
+                case "getAutoCommit":
+                    return autoCommit;
+                case "isReadOnly":
+                    return readOnly;
+                case "getTransactionIsolation":
+                    return isolation;
+                case "setAutoCommit":
+                    setAutoCommit( ( Boolean ) args[ 0 ] );
+                    return null;
+                case "setReadOnly":
+                    setReadOnly( ( Boolean ) args[ 0 ] );
+                    return null;
+                case "setTransactionIsolation":
+                    setTransactionIsolation( ( Integer ) args[ 0 ] );
+                    return null;
+                default:
+                    break;
+            }
+
+            try {
+                return method.invoke( physical, args );
+            } catch ( InvocationTargetException ex ) {
+                throw ex.getCause();
+            }
+        }
+
+        private void setAutoCommit( boolean value )
+                throws SQLException
+        {
+            if ( autoCommit != value ) {
+                physical.setAutoCommit( value );
+                autoCommit = value;
+            }
+        }
+
+        private void setReadOnly( boolean value )
+                throws SQLException
+        {
+            if ( readOnly != value ) {
+                physical.setReadOnly( value );
+                readOnly = value;
+            }
+        }
+
+        private void setTransactionIsolation( int value )
+                throws SQLException
+        {
+            if ( isolation != value ) {
+                physical.setTransactionIsolation( value );
+                isolation = value;
+            }
+        }
+
+        private boolean isValid()
+        {
+            try {
+                return physical.isValid( validationTimeout );
+            } catch ( SQLException ex ) {
+                return false;
+            }
+        }
+
+        private boolean reset()
+        {
+            try {
+                if ( physical.isClosed() ) {
+                    return false;
+                }
+                if ( !autoCommit ) {
+                    physical.rollback();
+                }
+                setAutoCommit( defaultAutoCommit );
+                setReadOnly( defaultReadOnly );
+                setTransactionIsolation( defaultIsolation );
+                physical.clearWarnings();
+                return true;
+
+            } catch ( SQLException ex ) {
+                LOGGER.debug( "Error resetting pooled connection", ex );
+                return false;
+            }
+        }
+
+        private void closePhysical()
+        {
+            total.decrementAndGet();
+            try {
+                physical.close();
+            } catch ( SQLException ex ) {
+                LOGGER.warn( "Error closing pooled connection", ex );
+            }
+        }
+    }
+
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * A concurrent cache of entities keyed by primary key, shared by all the DAO instances of a type. The cache is split in
+ * segments, each one being an LRU map protected by its own lock, so concurrent lookups of different keys rarely
+ * contend. The cache size is limited by a number of entries or by a total weight (for instance an estimated size in
+ * bytes), which is divided between the segments.
+ * <p>
+ * The cached entities are shared by all the transactions. Mutable entities must be copied using a copier given to the
+ * constructor, so that a caller modifying an entity (before updating it) does not expose uncommitted changes to the
+ * other threads. Without copier the entities must be immutable.
+ *
+ * @param <PK> The primary key type
+ * @param <E>  The entity type
+ * @author Fabien Barbero
+ * @see AbstractBaseDAO#setEntityCache(SQLEntityCache)
+ */
+public class SQLEntityCache<PK, E>
+{
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment<PK, E>[] segments;
+    private final ToLongFunction<? super E> weigher;
+    private final UnaryOperator<E> copier;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * Create a cache of immutable entities limited by a number of entries
+     *
+     * @param maxEntries The maximum number of cached entities
+     */
+    public SQLEntityCache( int maxEntries )
+    {
+        this( maxEntries, entity -> 1, UnaryOperator.identity() );
+    }
+
+    /**
+     * Create a cache of immutable entities limited by a total weight
+     *
+     * @param maxWeight The maximum total weight of the cached entities
+     * @param weigher   The function computing the weight of an entity
+     */
+    public SQLEntityCache( long maxWeight, ToLongFunction<? super E> weigher )
+    {
+        this( maxWeight, weigher, UnaryOperator.identity() );
+    }
+
+    /**
+     * Create a cache limited by a total weight (or by a number of entries using a weight of 1 per entity)
+     *
+     * @param maxWeight The maximum total weight of the cached entities
+     * @param weigher   The function computing the weight of an entity
+     * @param copier    The function copying an entity when it is cached and when it is read from the cache
+     */
+    @SuppressWarnings( { "unchecked", "rawtypes" } )
+    public SQLEntityCache( long maxWeight, ToLongFunction<? super E> weigher, UnaryOperator<E> copier )
+    {
+        if ( maxWeight < SEGMENTS ) {
+            throw new IllegalArgumentException( "Invalid cache size: " + maxWeight );
+        }
+        this.weigher = weigher;
+        this.copier = copier;
+        this.segments = ( Segment<PK, E>[] ) new Segment[ SEGMENTS ];
+        for ( int i = 0; i < SEGMENTS; i++ ) {
+            segments[ i ] = new Segment<>( maxWeight / SEGMENTS );
+        }
+    }
+
+    /**
+     * Get a cached entity
+     *
+     * @param key The entity primary key
+     * @return A copy of the entity, or null if not cached
+     */
+    public E get( PK key )
+    {
+        Segment<PK, E> segment = segmentFor( key );
+        E entity;
+        synchronized ( segment ) {
+            Node<E> node = segment.map.get( key );
+            entity = node == null ? null : node.entity;
+        }
+        if ( entity == null ) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return copier.apply( entity );
+    }
+
+    /**
+     * Remove an entity from the cache
+     *
+     * @param key The entity primary key
+     */
+    public void invalidate( PK key )
+    {
+        Segment<PK, E> segment = segmentFor( key );
+        synchronized ( segment ) {
+            segment.generation++;
+            Node<E> node = segment.map.remove( key );
+            if ( node != null ) {
+                segment.weight -= node.weight;
+                invalidations.increment();
+            }
+        }
+    }
+
+    /**
+     * Remove all the entities from the cache
+     */
+    public void invalidateAll()
+    {
+        for ( Segment<PK, E> segment : segments ) {
+            synchronized ( segment ) {
+                segment.generation++;
+                invalidations.add( segment.map.size() );
+                segment.map.clear();
+                segment.weight = 0;
+            }
+        }
+    }
+
+    /**
+     * Get the number of entities found in the cache
+     *
+     * @return The hits count
+     */
+    public long getHitCount()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * Get the number of entities not found in the cache
+     *
+     * @return The misses count
+     */
+    public long getMissCount()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * Get the number of entities evicted because the cache was full
+     *
+     * @return The evictions count
+     */
+    public long getEvictionCount()
+    {
+        return evictions.sum();
+    }
+
+    /**
+     * Get the number of entities removed because they have been modified or deleted
+     *
+     * @return The invalidations count
+     */
+    public long getInvalidationCount()
+    {
+        return invalidations.sum();
+    }
+
+    /**
+     * Get the number of cached entities
+     *
+     * @return The cache size
+     */
+    public int size()
+    {
+        int size = 0;
+        for ( Segment<PK, E> segment : segments ) {
+            synchronized ( segment ) {
+                size += segment.map.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Get the generation of the segment containing a key. It changes each time an entity of the segment is
+     * invalidated.
+     *
+     * @param key The entity primary key
+     * @return The generation
+     */
+    long getGeneration( PK key )
+    {
+        Segment<PK, E> segment = segmentFor( key );
+        synchronized ( segment ) {
+            return segment.generation;
+        }
+    }
+
+    /**
+     * Cache an entity, unless an entity of its segment has been invalidated since it has been read
+     *
+     * @param key        The entity primary key
+     * @param entity     The entity
+     * @param generation The generation of the segment when the entity has been read
+     */
+    void put( PK key, E entity, long generation )
+    {
+        entity = copier.apply( entity );
+        long weight = weigher.applyAsLong( entity );
+        Segment<PK, E> segment = segmentFor( key );
+        synchronized ( segment ) {
+            if ( generation != segment.generation || weight > segment.maxWeight ) {
+                return;
+            }
+            Node<E> previous = segment.map.put( key, new Node<>( entity, weight ) );
+            if ( previous != null ) {
+                segment.weight -= previous.weight;
+            }
+            segment.weight += weight;
+
+            Iterator<Node<E>> it = segment.map.values().iterator();
+            while ( segment.weight > segment.maxWeight ) {
+                Node<E> eldest = it.next();
+                it.remove();
+                segment.weight -= eldest.weight;
+                evictions.increment();
+            }
+        }
+    }
+
+    private Segment<PK, E> segmentFor( PK key )
+    {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return segments[ hash & ( SEGMENTS - 1 ) ];
+    }
+
+    private static final class Segment<PK, E>
+    {
+
+        private final LinkedHashMap<PK, Node<E>> map = new LinkedHashMap<>( 16, 0.75f, true );
+        private final long maxWeight;
+        private long weight;
+        private long generation;
+
+        private Segment( long maxWeight )
+        {
+            this.maxWeight = maxWeight;
+        }
+    }
+
+    private static final class Node<E>
+    {
+
+        private final E entity;
+        private final long weight;
+
+        private Node( E entity, long weight )
+        {
+            this.entity = entity;
+            this.weight = weight;
+        }
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The execution of a SQL statement, as reported to the {@link SQLListener}s. The durations are in nanoseconds.
+ *
+ * @author Fabien Barbero
+ */
+public final class SQLExecution
+{
+
+    private final String sql;
+    private final List<Object> parameters;
+    private final int parameterCount;
+    private final long prepareNanos;
+    private final long executeNanos;
+    private final long fetchNanos;
+    private final long rows;
+    private final Throwable error;
+
+    SQLExecution( String sql, List<Object> parameters, int parameterCount,
+                  long prepareNanos, long executeNanos, long fetchNanos, long rows, Throwable error )
+    {
+        this.sql = sql;
+        this.parameters = parameters;
+        this.parameterCount = parameterCount;
+        this.prepareNanos = prepareNanos;
+        this.executeNanos = executeNanos;
+        this.fetchNanos = fetchNanos;
+        this.rows = rows;
+        this.error = error;
+    }
+
+    /**
+     * Get the SQL statement
+     *
+     * @return The SQL statement
+     */
+    public String getSQL()
+    {
+        return sql;
+    }
+
+    /**
+     * Get the parameters bound to the statement. The parameters of the batches are not available.
+     *
+     * @return The parameters
+     */
+    public List<Object> getParameters()
+    {
+        return parameters == null ? Collections.emptyList() : Collections.unmodifiableList( parameters );
+    }
+
+    /**
+     * Get the number of parameters bound to the statement (for all the rows of a batch)
+     *
+     * @return The parameters count
+     */
+    public int getParameterCount()
+    {
+        return parameterCount;
+    }
+
+    /**
+     * Get the time spent preparing the statement and binding its parameters
+     *
+     * @return The prepare duration
+     */
+    public long getPrepareNanos()
+    {
+        return prepareNanos;
+    }
+
+    /**
+     * Get the time spent executing the statement
+     *
+     * @return The execute duration
+     */
+    public long getExecuteNanos()
+    {
+        return executeNanos;
+    }
+
+    /**
+     * Get the time spent reading the results. For an iterator, it is the time elapsed until the iterator is closed.
+     *
+     * @return The fetch duration
+     */
+    public long getFetchNanos()
+    {
+        return fetchNanos;
+    }
+
+    /**
+     * Get the total duration of the statement
+     *
+     * @return The total duration
+     */
+    public long getTotalNanos()
+    {
+        return prepareNanos + executeNanos + fetchNanos;
+    }
+
+    /**
+     * Get the number of rows read or modified by the statement
+     *
+     * @return The rows count
+     */
+    public long getRows()
+    {
+        return rows;
+    }
+
+    /**
+     * Get the error thrown by the statement
+     *
+     * @return The error, or null if the statement succeeded
+     */
+    public Throwable getError()
+    {
+        return error;
+    }
+
+    @Override
+    public String toString()
+    {
+        return sql + " (" + getTotalNanos() / 1000 + " µs, " + rows + " rows)";
+    }
+
+}
@@ -22,6 +22,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * @author Fabien Barbero
@@ -33,12 +34,19 @@ public class SQLIterator<T>
     private final ResultSet rs;
     private final SQLRecordMapper<T> mapper;
     private final PreparedStatement st;
+    private final SQLRunner runner;
+    private final SQLRecord record;
+    private final SQLProbe probe;
+    private long rows;
 
-    SQLIterator( ResultSet rs, PreparedStatement st, SQLRecordMapper<T> mapper )
+    SQLIterator( ResultSet rs, PreparedStatement st, SQLRecordMapper<T> mapper, SQLRunner runner, SQLProbe probe )
     {
+        this.probe = probe;
         this.rs = rs;
         this.st = st;
         this.mapper = mapper;
+        this.runner = runner;
+        this.record = new SQLRecord( rs, new SQLColumnIndexes( rs ) );
     }
 
     @Override
@@ -47,6 +55,7 @@ public class SQLIterator<T>
         try {
             return rs.next();
         } catch( SQLException ex ) {
+            probe.failed( ex );
             throw new SQLFaultException( "Error getting next entity", ex );
         }
     }
@@ -54,7 +63,25 @@ public class SQLIterator<T>
     @Override
     public T next()
     {
-        return mapper.buildEntity( new SQLRecord( rs ) );
+        rows++;
+        try {
+            return mapper.buildEntity( record );
+        } catch( RuntimeException ex ) {
+            probe.failed( ex );
+            throw ex;
+        }
+    }
+
+    /**
+     * Get the columns of the selected records
+     *
+     * @return The columns
+     * @throws SQLFaultException If the columns cannot be returned
+     */
+    public List<SQLRecord.Column> getColumns()
+            throws SQLFaultException
+    {
+        return record.getColumns();
     }
 
     /**
@@ -75,9 +102,14 @@ public class SQLIterator<T>
     public void close()
     {
         try {
-            rs.close();
-            st.close();
+            try {
+                rs.close();
+            } finally {
+                runner.closeStatement( st );
+            }
+            probe.completed( rows );
         } catch( SQLException ex ) {
+            probe.failed( ex );
             throw new SQLFaultException( "Error closing SQL transaction", ex );
         }
     }
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterate over the results of a query using keyset (seek) pagination. Each page is selected with a
+ * "where key &gt; ? order by key limit ?" query, so the cost of a page does not depend on its position. No cursor is
+ * kept open between two pages, so the transaction can be committed between them.
+ * <p>
+ * The key column must be unique and not null. Since the query is wrapped in a sub-query, the key must be given as an
+ * unqualified column of its result (for instance "ID" and not "U.ID"), using an alias if needed. The iteration can be
+ * resumed later from the key returned by {@link #getLastKey()}.
+ *
+ * @param <T> The entities type
+ * @author Fabien Barbero
+ * @see SQLRunner#queryByKeyset(SQLRecordMapper, SQLQueryBuilder, String, int, Object)
+ */
+public class SQLKeysetIterator<T>
+        implements Iterator<T>
+{
+
+    private final SQLRunner runner;
+    private final SQLRecordMapper<T> mapper;
+    private final SQLQueryBuilder query;
+    private final String keyColumn;
+    private final int pageSize;
+    private Object lastKey;
+    private Object lastPageKey;
+    private Iterator<T> page = Collections.emptyIterator();
+    private boolean lastPage;
+
+    SQLKeysetIterator( SQLRunner runner,
+                       SQLRecordMapper<T> mapper,
+                       SQLQueryBuilder query,
+                       String keyColumn,
+                       int pageSize,
+                       Object lastKey )
+    {
+        if ( pageSize <= 0 ) {
+            throw new IllegalArgumentException( "Invalid page size: " + pageSize );
+        }
+        this.runner = runner;
+        this.mapper = mapper;
+        this.query = query;
+        this.keyColumn = keyColumn;
+        this.pageSize = pageSize;
+        this.lastKey = lastKey;
+        this.lastPageKey = lastKey;
+    }
+
+    /**
+     * Select the next page of entities. The page is considered as consumed, so this method must not be mixed with the
+     * iterator methods.
+     *
+     * @return The entities of the page. The list is empty when there are no more entities.
+     * @throws SQLFaultException Query error
+     */
+    public List<T> nextPage()
+            throws SQLFaultException
+    {
+        List<T> entities = fetchPage();
+        lastKey = lastPageKey;
+        return entities;
+    }
+
+    private List<T> fetchPage()
+    {
+        if ( lastPage ) {
+            return Collections.emptyList();
+        }
+
+        SQLQueryBuilder pageQuery = new SQLQueryBuilder( "select * from (" ).append( query ).append( ") SQL_KEYSET" );
+        if ( lastPageKey != null ) {
+            pageQuery.append( " where " + keyColumn + " > ?", lastPageKey );
+        }
+        pageQuery.append( " order by " + keyColumn + " limit ?", pageSize );
+
+        Object[] key = new Object[ 1 ];
+        List<T> entities = runner.query( record -> {
+            key[ 0 ] = record.getObject( keyColumn ).orElse( null );
+            return mapper.buildEntity( record );
+        }, pageQuery );
+
+        if ( entities.size() < pageSize ) {
+            lastPage = true;
+        }
+        if ( !entities.isEmpty() ) {
+            lastPageKey = key[ 0 ];
+        }
+        return entities;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        if ( !page.hasNext() && !lastPage ) {
+            page = fetchPage().iterator();
+        }
+        return page.hasNext();
+    }
+
+    @Override
+    public T next()
+    {
+        if ( !hasNext() ) {
+            throw new NoSuchElementException();
+        }
+        T entity = page.next();
+        if ( !page.hasNext() ) {
+            lastKey = lastPageKey;
+        }
+        return entity;
+    }
+
+    /**
+     * Get the key of the last entity of the last page fully consumed. It can be used to resume the iteration later.
+     *
+     * @return The last key, or null if no page has been consumed
+     */
+    public Object getLastKey()
+    {
+        return lastKey;
+    }
+
+    /**
+     * Get the entities as a sequential stream
+     *
+     * @return The stream of entities
+     */
+    public Stream<T> stream()
+    {
+        Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize( this, Spliterator.ORDERED );
+        return StreamSupport.stream( spliterator, false );
+    }
+
+}
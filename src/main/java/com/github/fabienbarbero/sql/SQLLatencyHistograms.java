@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link SQLListener} keeping a latency histogram per SQL statement. The histograms use logarithmic buckets with 8
+ * sub-buckets per power of two, so the recorded values are precise to about 12% and recording a value only takes a
+ * few atomic increments.
+ * <p>
+ * The statements are identified by their SQL text, so the queries should use parameters instead of literal values.
+ * Once <code>maxStatements</code> statements are tracked, the new statements are ignored.
+ *
+ * @author Fabien Barbero
+ */
+public class SQLLatencyHistograms
+        implements SQLListener
+{
+
+    private final int maxStatements;
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * Create new histograms
+     *
+     * @param maxStatements The maximum number of statements tracked
+     */
+    public SQLLatencyHistograms( int maxStatements )
+    {
+        this.maxStatements = maxStatements;
+    }
+
+    @Override
+    public void statementExecuted( SQLExecution execution )
+    {
+        Histogram histogram = histograms.get( execution.getSQL() );
+        if ( histogram == null ) {
+            if ( histograms.size() >= maxStatements ) {
+                dropped.increment();
+                return;
+            }
+            histogram = histograms.computeIfAbsent( execution.getSQL(), sql -> new Histogram() );
+        }
+        histogram.record( execution );
+    }
+
+    /**
+     * Get the histograms of the tracked statements
+     *
+     * @return The histograms by SQL statement
+     */
+    public Map<String, Histogram> getHistograms()
+    {
+        return Collections.unmodifiableMap( histograms );
+    }
+
+    /**
+     * Get the histogram of a statement
+     *
+     * @param sql The SQL statement
+     * @return The histogram, or null if the statement is not tracked
+     */
+    public Histogram getHistogram( String sql )
+    {
+        return histograms.get( sql );
+    }
+
+    /**
+     * Get the number of executions ignored because too many statements are tracked
+     *
+     * @return The ignored executions count
+     */
+    public long getDroppedCount()
+    {
+        return dropped.sum();
+    }
+
+    /**
+     * Remove all the histograms
+     */
+    public void clear()
+    {
+        histograms.clear();
+    }
+
+    /**
+     * The latency histogram of a statement. The durations are in nanoseconds.
+     */
+    public static final class Histogram
+    {
+
+        private static final int SUB_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        private static final int BUCKETS = ( 64 - SUB_BITS ) * SUB_BUCKETS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray( BUCKETS );
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        private Histogram()
+        {
+        }
+
+        private void record( SQLExecution execution )
+        {
+            long nanos = Math.max( 0, execution.getTotalNanos() );
+            buckets.incrementAndGet( bucket( nanos ) );
+            count.increment();
+            total.add( nanos );
+            rows.add( execution.getRows() );
+            if ( execution.getError() != null ) {
+                errors.increment();
+            }
+            if ( nanos > max.get() ) {
+                max.accumulateAndGet( nanos, Math::max );
+            }
+        }
+
+        /**
+         * Get the number of executions
+         *
+         * @return The executions count
+         */
+        public long getCount()
+        {
+            return count.sum();
+        }
+
+        /**
+         * Get the number of failed executions
+         *
+         * @return The errors count
+         */
+        public long getErrorCount()
+        {
+            return errors.sum();
+        }
+
+        /**
+         * Get the total number of rows read or modified
+         *
+         * @return The rows count
+         */
+        public long getRowCount()
+        {
+            return rows.sum();
+        }
+
+        /**
+         * Get the mean duration
+         *
+         * @return The mean duration, or 0 if there are no executions
+         */
+        public long getMeanNanos()
+        {
+            long n = count.sum();
+            return n == 0 ? 0 : total.sum() / n;
+        }
+
+        /**
+         * Get the maximum duration
+         *
+         * @return The maximum duration
+         */
+        public long getMaxNanos()
+        {
+            return max.get();
+        }
+
+        /**
+         * Get a percentile of the durations
+         *
+         * @param percentile The percentile (between 0 and 100)
+         * @return The highest duration of the bucket containing the percentile, or 0 if there are no executions
+         */
+        public long getPercentileNanos( double percentile )
+        {
+            long[] counts = new long[ BUCKETS ];
+            long n = 0;
+            for ( int i = 0; i < BUCKETS; i++ ) {
+                counts[ i ] = buckets.get( i );
+                n += counts[ i ];
+            }
+            if ( n == 0 ) {
+                return 0;
+            }
+
+            long rank = Math.max( 1, ( long ) Math.ceil( percentile / 100 * n ) );
+            long seen = 0;
+            for ( int i = 0; i < BUCKETS; i++ ) {
+                seen += counts[ i ];
+                if ( seen >= rank ) {
+                    return Math.min( upperBound( i ), getMaxNanos() );
+                }
+            }
+            return getMaxNanos();
+        }
+
+        static int bucket( long value )
+        {
+            if ( value < SUB_BUCKETS ) {
+                return ( int ) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros( value );
+            int sub = ( int ) ( value >>> ( exponent - SUB_BITS ) ) & ( SUB_BUCKETS - 1 );
+            return ( exponent - SUB_BITS + 1 ) * SUB_BUCKETS + sub;
+        }
+
+        static long upperBound( int bucket )
+        {
+            if ( bucket < SUB_BUCKETS ) {
+                return bucket;
+            }
+            int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+            long lower = ( long ) ( SUB_BUCKETS + bucket % SUB_BUCKETS ) << ( exponent - SUB_BITS );
+            return lower + ( 1L << ( exponent - SUB_BITS ) ) - 1;
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+/**
+ * Listener notified of the SQL statements executed by the {@link SQLRunner} and of the {@link SQLTransaction}
+ * completions. The listeners are called synchronously by the thread executing the statement, so they must be fast
+ * and thread-safe.
+ *
+ * @author Fabien Barbero
+ * @see SQLListeners#add(SQLListener)
+ */
+public interface SQLListener
+{
+
+    /**
+     * Called when a statement has been executed. For an iterator, the statement is reported when the iterator is
+     * closed.
+     *
+     * @param execution The statement execution
+     */
+    default void statementExecuted( SQLExecution execution )
+    {
+    }
+
+    /**
+     * Called when a transaction has been committed or rolled back
+     *
+     * @param committed    true if the transaction has been committed, false if it has been rolled back
+     * @param elapsedNanos The time elapsed since the beginning of the transaction, in nanoseconds
+     * @param error        The commit or rollback error, or null
+     */
+    default void transactionCompleted( boolean committed, long elapsedNanos, Throwable error )
+    {
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of the global {@link SQLListener}s. When no listener is registered, the statements are not timed at all.
+ *
+ * @author Fabien Barbero
+ */
+public final class SQLListeners
+{
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( SQLListeners.class );
+    private static final SQLListener[] NONE = new SQLListener[ 0 ];
+
+    private static volatile SQLListener[] listeners = NONE;
+
+    private SQLListeners()
+    {
+    }
+
+    /**
+     * Register a listener
+     *
+     * @param listener The listener
+     */
+    public static synchronized void add( SQLListener listener )
+    {
+        SQLListener[] array = Arrays.copyOf( listeners, listeners.length + 1 );
+        array[ listeners.length ] = listener;
+        listeners = array;
+    }
+
+    /**
+     * Unregister a listener
+     *
+     * @param listener The listener
+     */
+    public static synchronized void remove( SQLListener listener )
+    {
+        listeners = Arrays.stream( listeners ).filter( l -> l != listener ).toArray( SQLListener[]::new );
+    }
+
+    /**
+     * Get the registered listeners
+     *
+     * @return The listeners (the array must not be modified)
+     */
+    static SQLListener[] get()
+    {
+        return listeners;
+    }
+
+    static void statementExecuted( SQLListener[] listeners, SQLExecution execution )
+    {
+        for ( SQLListener listener : listeners ) {
+            try {
+                listener.statementExecuted( execution );
+            } catch ( RuntimeException ex ) {
+                LOGGER.warn( "Error notifying SQL listener", ex );
+            }
+        }
+    }
+
+    static void transactionCompleted( boolean committed, long startNanos, Throwable error )
+    {
+        SQLListener[] array = listeners;
+        if ( array.length == 0 ) {
+            return;
+        }
+
+        long elapsed = System.nanoTime() - startNanos;
+        for ( SQLListener listener : array ) {
+            try {
+                listener.transactionCompleted( committed, elapsed, error );
+            } catch ( RuntimeException ex ) {
+                LOGGER.warn( "Error notifying SQL listener", ex );
+            }
+        }
+    }
+
+}
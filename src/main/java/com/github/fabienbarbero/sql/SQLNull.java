@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+/**
+ * A typed null query parameter. Using it instead of <code>null</code> tells the driver the SQL type of the parameter,
+ * so it does not have to guess it.
+ *
+ * @author Fabien Barbero
+ * @see java.sql.Types
+ */
+public final class SQLNull
+{
+
+    /**
+     * Create a typed null parameter
+     *
+     * @param sqlType The SQL type from {@link java.sql.Types}
+     * @return The null parameter
+     */
+    public static SQLNull of( int sqlType )
+    {
+        return new SQLNull( sqlType );
+    }
+
+    private final int sqlType;
+
+    private SQLNull( int sqlType )
+    {
+        this.sqlType = sqlType;
+    }
+
+    /**
+     * Get the SQL type of the parameter
+     *
+     * @return The SQL type from {@link java.sql.Types}
+     */
+    public int getSQLType()
+    {
+        return sqlType;
+    }
+
+    @Override
+    public boolean equals( Object obj )
+    {
+        return obj instanceof SQLNull && ( ( SQLNull ) obj ).sqlType == sqlType;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return sqlType;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "NULL(" + sqlType + ")";
+    }
+
+}
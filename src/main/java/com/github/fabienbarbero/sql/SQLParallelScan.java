@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import javax.sql.DataSource;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Scan a whole table in parallel. The range of an integer key column is split in several partitions, and each
+ * partition is read with its own connection and cursor. The rows having a null key are not returned.
+ * <p>
+ * Only integer keys are supported: the partitions bounds are computed from the minimum and maximum keys, so the rows
+ * are only evenly distributed when the keys are. Tables having a non-integer key (such as an UUID) cannot be split.
+ * <p>
+ * The data source must be able to provide one connection per partition read at the same time.
+ *
+ * @author Fabien Barbero
+ */
+public class SQLParallelScan
+{
+
+    private final DataSource ds;
+    private final String tableName;
+    private final String keyColumn;
+    private final int partitions;
+    private Integer fetchSize;
+    private boolean readOnly;
+
+    /**
+     * Create a new scan
+     *
+     * @param ds         The data source providing the connections
+     * @param tableName  The table to scan
+     * @param keyColumn  The integer column used to split the table
+     * @param partitions The number of partitions
+     */
+    public SQLParallelScan( DataSource ds, String tableName, String keyColumn, int partitions )
+    {
+        if ( partitions <= 0 ) {
+            throw new IllegalArgumentException( "Invalid partitions count: " + partitions );
+        }
+        this.ds = ds;
+        this.tableName = tableName;
+        this.keyColumn = keyColumn;
+        this.partitions = partitions;
+    }
+
+    /**
+     * Set the fetch size used by each partition cursor
+     *
+     * @param fetchSize The fetch size. The value depends on the SQL driver. If null, the driver default is used.
+     */
+    public void setFetchSize( Integer fetchSize )
+    {
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Set if the partitions are read in read-only transactions. Some drivers do not allow to change the read-only mode
+     * of an open connection, so the read/write mode is used by default.
+     *
+     * @param readOnly Indicates if the transactions must be read-only
+     */
+    public void setReadOnly( boolean readOnly )
+    {
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Split the key range in partitions. The key bounds are read from the table.
+     *
+     * @return The partitions, which are empty if the table has no rows
+     * @throws SQLFaultException Query error
+     */
+    public List<Partition> getPartitions()
+            throws SQLFaultException
+    {
+        long[] bounds;
+        try ( SQLTransaction tx = SQLTransaction.begin( ds, readOnly, null ) ) {
+            bounds = new SQLRunner( tx ).querySingle(
+                    record -> record.isNull( 1 ) ? null : new long[]{ record.getLongOrDefault( 1, 0 ), record.getLongOrDefault( 2, 0 ) },
+                    new SQLQueryBuilder( "select min(" + keyColumn + "), max(" + keyColumn + ") from " + tableName ) );
+        }
+        if ( bounds == null ) {
+            return Collections.emptyList();
+        }
+
+        BigInteger min = BigInteger.valueOf( bounds[ 0 ] );
+        BigInteger span = BigInteger.valueOf( bounds[ 1 ] ).subtract( min ).add( BigInteger.ONE );
+        int count = span.compareTo( BigInteger.valueOf( partitions ) ) < 0 ? span.intValue() : partitions;
+
+        List<Partition> list = new ArrayList<>( count );
+        for ( int i = 0; i < count; i++ ) {
+            long lower = min.add( span.multiply( BigInteger.valueOf( i ) ).divide( BigInteger.valueOf( count ) ) ).longValue();
+            Long upper = i == count - 1 ? null
+                                        : min.add( span.multiply( BigInteger.valueOf( i + 1 ) ).divide( BigInteger.valueOf( count ) ) ).longValue();
+            list.add( new Partition( lower, upper ) );
+        }
+        return list;
+    }
+
+    /**
+     * Read the table as a parallel stream. Each partition is read in its own transaction, which is closed once the
+     * partition rows have been consumed.
+     *
+     * @param <T>    The entities type
+     * @param mapper The mapper used to build Java entities
+     * @return The parallel stream of entities
+     * @throws SQLFaultException Query error
+     */
+    public <T> Stream<T> stream( SQLRecordMapper<T> mapper )
+            throws SQLFaultException
+    {
+        return getPartitions().parallelStream().flatMap( partition -> stream( partition, mapper ) );
+    }
+
+    /**
+     * Read a single partition as a stream
+     *
+     * @param <T>       The entities type
+     * @param partition The partition to read
+     * @param mapper    The mapper used to build Java entities
+     * @return The stream of entities. It must be closed to release the connection.
+     * @throws SQLFaultException Query error
+     */
+    public <T> Stream<T> stream( Partition partition, SQLRecordMapper<T> mapper )
+            throws SQLFaultException
+    {
+        SQLTransaction tx = SQLTransaction.begin( ds, readOnly, null );
+        try {
+            return new SQLRunner( tx ).queryAsStream( mapper, fetchSize, partition.toQuery( tableName, keyColumn ) )
+                    .onClose( tx::close );
+
+        } catch ( RuntimeException ex ) {
+            tx.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Read the table using one fork-join task per partition, and wait for all the tasks to complete
+     *
+     * @param <T>    The entities type
+     * @param mapper The mapper used to build Java entities
+     * @param action The action executed for each entity. It is called concurrently by several threads.
+     * @param pool   The pool executing the tasks
+     * @throws SQLFaultException Query error
+     */
+    public <T> void forEach( SQLRecordMapper<T> mapper, Consumer<? super T> action, ForkJoinPool pool )
+            throws SQLFaultException
+    {
+        List<Partition> list = getPartitions();
+        pool.invoke( new RecursiveAction()
+        {
+            @Override
+            protected void compute()
+            {
+                List<RecursiveAction> tasks = new ArrayList<>( list.size() );
+                for ( Partition partition : list ) {
+                    tasks.add( new RecursiveAction()
+                    {
+                        @Override
+                        protected void compute()
+                        {
+                            try ( Stream<T> stream = stream( partition, mapper ) ) {
+                                stream.forEach( action );
+                            }
+                        }
+                    } );
+                }
+                ForkJoinTask.invokeAll( tasks );
+            }
+        } );
+    }
+
+    /**
+     * A range of keys of the scanned table
+     */
+    public static final class Partition
+    {
+
+        private final long lower;
+        private final Long upper;
+
+        private Partition( long lower, Long upper )
+        {
+            this.lower = lower;
+            this.upper = upper;
+        }
+
+        /**
+         * Get the lower bound (inclusive) of the partition
+         *
+         * @return The lower key
+         */
+        public long getLower()
+        {
+            return lower;
+        }
+
+        /**
+         * Get the upper bound (exclusive) of the partition
+         *
+         * @return The upper key, or null for the last partition
+         */
+        public Long getUpper()
+        {
+            return upper;
+        }
+
+        private SQLQueryBuilder toQuery( String tableName, String keyColumn )
+        {
+            SQLQueryBuilder query = new SQLQueryBuilder( "select * from " + tableName + " where " + keyColumn + " >= ?", lower );
+            if ( upper != null ) {
+                query.append( " and " + keyColumn + " < ?", upper );
+            }
+            return query;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "[" + lower + ", " + ( upper == null ? "+inf" : upper ) + ")";
+        }
+    }
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Bind a query parameter of a given type to a prepared statement.
+ *
+ * @param <T> The parameter type
+ * @author Fabien Barbero
+ * @see SQLParameterBinders
+ */
+@FunctionalInterface
+public interface SQLParameterBinder<T>
+{
+
+    /**
+     * Bind the parameter value
+     *
+     * @param st    The statement
+     * @param index The parameter index (starting at 1)
+     * @param value The parameter value (never null)
+     * @throws SQLException If the value cannot be bound
+     */
+    void bind( PreparedStatement st, int index, T value )
+            throws SQLException;
+
+}
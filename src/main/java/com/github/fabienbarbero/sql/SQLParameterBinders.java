@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A registry of {@link SQLParameterBinder} keyed by parameter class. The binder of a class is resolved once (using the
+ * binders registered for the class, then its interfaces, then its super classes) and cached. The values without binder are
+ * bound using {@link PreparedStatement#setObject(int, Object)}.
+ * <p>
+ * The default binders use the typed setters for strings, numbers, booleans, byte arrays, dates and times, store the
+ * enums using their name and the {@link SQLObject} using their SQL representation.
+ *
+ * @author Fabien Barbero
+ */
+public class SQLParameterBinders
+{
+
+    private static final SQLParameterBinders DEFAULT = new SQLParameterBinders();
+
+    private static final SQLParameterBinder<Object> OBJECT_BINDER = PreparedStatement::setObject;
+
+    /**
+     * Get the registry used by default by the {@link SQLRunner}
+     *
+     * @return The default registry
+     */
+    public static SQLParameterBinders getDefault()
+    {
+        return DEFAULT;
+    }
+
+    /**
+     * Get a binder storing the {@link UUID} as String
+     *
+     * @return The binder
+     */
+    public static SQLParameterBinder<UUID> uuidAsString()
+    {
+        return ( st, index, value ) -> st.setString( index, value.toString() );
+    }
+
+    /**
+     * Get a binder storing the {@link UUID} as a 16 bytes array
+     *
+     * @return The binder
+     */
+    public static SQLParameterBinder<UUID> uuidAsBytes()
+    {
+        return ( st, index, value ) -> {
+            ByteBuffer buffer = ByteBuffer.allocate( 16 );
+            buffer.putLong( value.getMostSignificantBits() );
+            buffer.putLong( value.getLeastSignificantBits() );
+            st.setBytes( index, buffer.array() );
+        };
+    }
+
+    /**
+     * Get a binder storing the enums using their ordinal
+     *
+     * @return The binder
+     */
+    public static SQLParameterBinder<Enum<?>> enumAsOrdinal()
+    {
+        return ( st, index, value ) -> st.setInt( index, value.ordinal() );
+    }
+
+    /**
+     * Get a binder storing the objects as JSON strings
+     *
+     * @param serializer The function serializing the objects to JSON
+     * @param <T>        The objects type
+     * @return The binder
+     */
+    public static <T> SQLParameterBinder<T> json( Function<? super T, String> serializer )
+    {
+        return ( st, index, value ) -> st.setString( index, serializer.apply( value ) );
+    }
+
+    private final Map<Class<?>, SQLParameterBinder<?>> registered = new ConcurrentHashMap<>();
+    private final Map<Class<?>, SQLParameterBinder<Object>> resolved = new ConcurrentHashMap<>();
+
+    /**
+     * Create a new registry containing the default binders
+     */
+    public SQLParameterBinders()
+    {
+        register( String.class, ( st, index, value ) -> st.setString( index, value ) );
+        register( Long.class, ( st, index, value ) -> st.setLong( index, value ) );
+        register( Integer.class, ( st, index, value ) -> st.setInt( index, value ) );
+        register( Short.class, ( st, index, value ) -> st.setShort( index, value ) );
+        register( Byte.class, ( st, index, value ) -> st.setByte( index, value ) );
+        register( Double.class, ( st, index, value ) -> st.setDouble( index, value ) );
+        register( Float.class, ( st, index, value ) -> st.setFloat( index, value ) );
+        register( Boolean.class, ( st, index, value ) -> st.setBoolean( index, value ) );
+        register( BigDecimal.class, ( st, index, value ) -> st.setBigDecimal( index, value ) );
+        register( byte[].class, ( st, index, value ) -> st.setBytes( index, value ) );
+        register( LocalDate.class, ( st, index, value ) -> st.setDate( index, Date.valueOf( value ) ) );
+        register( Instant.class, ( st, index, value ) -> st.setTimestamp( index, Timestamp.from( value ) ) );
+        register( LocalTime.class, ( st, index, value ) -> st.setTime( index, Time.valueOf( value ) ) );
+        register( Enum.class, ( st, index, value ) -> st.setString( index, value.name() ) );
+        register( SQLObject.class, ( st, index, value ) -> st.setObject( index, value.toSQLObject( st.getConnection() ) ) );
+        register( SQLNull.class, ( st, index, value ) -> st.setNull( index, value.getSQLType() ) );
+    }
+
+    /**
+     * Register a binder for a class. The binder is also used for the sub classes (or implementations) of the class,
+     * unless a more specific binder is registered.
+     *
+     * @param type   The parameter class
+     * @param binder The binder
+     * @param <T>    The parameter type
+     * @return This registry
+     */
+    public <T> SQLParameterBinders register( Class<T> type, SQLParameterBinder<? super T> binder )
+    {
+        registered.put( type, binder );
+        resolved.clear();
+        return this;
+    }
+
+    /**
+     * Bind a parameter value to a statement
+     *
+     * @param st    The statement
+     * @param index The parameter index (starting at 1)
+     * @param value The value. It may be null.
+     * @throws SQLException If the value cannot be bound
+     */
+    public void bind( PreparedStatement st, int index, Object value )
+            throws SQLException
+    {
+        if ( value == null ) {
+            st.setObject( index, null );
+        } else {
+            getBinder( value.getClass() ).bind( st, index, value );
+        }
+    }
+
+    /**
+     * Get the binder used for a class
+     *
+     * @param type The parameter class
+     * @return The binder
+     */
+    public SQLParameterBinder<Object> getBinder( Class<?> type )
+    {
+        SQLParameterBinder<Object> binder = resolved.get( type );
+        if ( binder == null ) {
+            binder = resolve( type );
+            resolved.put( type, binder );
+        }
+        return binder;
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private SQLParameterBinder<Object> resolve( Class<?> type )
+    {
+        SQLParameterBinder<?> binder = registered.get( type );
+        if ( binder != null ) {
+            return ( SQLParameterBinder<Object> ) binder;
+        }
+
+        // Search the interfaces first (breadth-first), so that an enum implementing SQLObject is handled as such
+        Deque<Class<?>> queue = new ArrayDeque<>();
+        for ( Class<?> c = type; c != null; c = c.getSuperclass() ) {
+            queue.addAll( Arrays.asList( c.getInterfaces() ) );
+        }
+        while ( !queue.isEmpty() ) {
+            Class<?> itf = queue.poll();
+            binder = registered.get( itf );
+            if ( binder != null ) {
+                return ( SQLParameterBinder<Object> ) binder;
+            }
+            queue.addAll( Arrays.asList( itf.getInterfaces() ) );
+        }
+
+        for ( Class<?> c = type.getSuperclass(); c != null; c = c.getSuperclass() ) {
+            binder = registered.get( c );
+            if ( binder != null ) {
+                return ( SQLParameterBinder<Object> ) binder;
+            }
+        }
+        return OBJECT_BINDER;
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import java.util.List;
+
+/**
+ * Measure the phases of a statement execution and report them to the {@link SQLListener}s. When no listener is
+ * registered, a disabled probe is used and nothing is measured.
+ *
+ * @author Fabien Barbero
+ */
+final class SQLProbe
+{
+
+    private static final SQLProbe DISABLED = new SQLProbe( null, null, null );
+
+    private final SQLListener[] listeners;
+    private final String sql;
+    private final List<Object> parameters;
+    private long last;
+    private long prepareNanos;
+    private long executeNanos;
+    private int phase;
+
+    private SQLProbe( SQLListener[] listeners, String sql, List<Object> parameters )
+    {
+        this.listeners = listeners;
+        this.sql = sql;
+        this.parameters = parameters;
+        this.last = listeners == null ? 0 : System.nanoTime();
+    }
+
+    static SQLProbe start( SQLQueryBuilder query )
+    {
+        SQLListener[] listeners = SQLListeners.get();
+        if ( listeners.length == 0 ) {
+            return DISABLED;
+        }
+        return new SQLProbe( listeners, query.getSQL(), query.getParams() );
+    }
+
+    static SQLProbe start( String sql )
+    {
+        SQLListener[] listeners = SQLListeners.get();
+        if ( listeners.length == 0 ) {
+            return DISABLED;
+        }
+        return new SQLProbe( listeners, sql, null );
+    }
+
+    /**
+     * The statement has been prepared and its parameters bound
+     */
+    void prepared()
+    {
+        if ( listeners != null ) {
+            long now = System.nanoTime();
+            prepareNanos = now - last;
+            last = now;
+            phase = 1;
+        }
+    }
+
+    /**
+     * The statement has been executed
+     */
+    void executed()
+    {
+        if ( listeners != null ) {
+            long now = System.nanoTime();
+            executeNanos = now - last;
+            last = now;
+            phase = 2;
+        }
+    }
+
+    /**
+     * The statement results have been read
+     *
+     * @param rows The number of rows read or modified
+     */
+    void completed( long rows )
+    {
+        completed( rows, 0, null );
+    }
+
+    /**
+     * The batch statement has been executed
+     *
+     * @param rows           The number of rows modified
+     * @param parameterCount The number of parameters bound for all the rows
+     */
+    void completed( long rows, int parameterCount )
+    {
+        completed( rows, parameterCount, null );
+    }
+
+    /**
+     * The statement failed
+     *
+     * @param error The error
+     */
+    void failed( Throwable error )
+    {
+        completed( 0, 0, error );
+    }
+
+    private void completed( long rows, int batchParameterCount, Throwable error )
+    {
+        if ( listeners == null || phase > 2 ) {
+            return;
+        }
+
+        // A failure is accounted to the phase which was running
+        long elapsed = System.nanoTime() - last;
+        long fetchNanos = 0;
+        if ( phase == 0 ) {
+            prepareNanos = elapsed;
+        } else if ( phase == 1 ) {
+            executeNanos = elapsed;
+        } else {
+            fetchNanos = elapsed;
+        }
+        phase = 3;
+
+        int parameterCount = parameters == null ? batchParameterCount : parameters.size();
+        SQLExecution execution = new SQLExecution( sql, parameters, parameterCount,
+                                                   prepareNanos, executeNanos, fetchNanos, rows, error );
+        SQLListeners.statementExecuted( listeners, execution );
+    }
+
+}
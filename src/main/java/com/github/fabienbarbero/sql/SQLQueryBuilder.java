@@ -18,36 +18,209 @@
  */
 package com.github.fabienbarbero.sql;
 
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 
 /**
  * @author Fabien Barbero
+ * @see SQLQueryTemplate
  */
 public class SQLQueryBuilder
 {
 
+    /**
+     * The maximum number of parameters in a single "in" list
+     */
+    static final int MAX_IN_PARAMS = 512;
+    private static final Object[] NO_PARAMS = new Object[ 0 ];
+    private static final String[] IN_PLACEHOLDERS = new String[ Integer.numberOfTrailingZeros( MAX_IN_PARAMS ) + 1 ];
 
-    final StringBuilder query = new StringBuilder();
-    final List<Object> params = new ArrayList<>();
+    private StringBuilder query;
+    private String sql;
+    private Object[] params;
+    private int paramsCount;
 
     public SQLQueryBuilder()
     {
+        this.sql = "";
+        this.params = NO_PARAMS;
     }
 
     public SQLQueryBuilder( String queryPart, Object... params )
     {
-        append( queryPart, params );
+        this.sql = queryPart;
+        this.params = params.length == 0 ? NO_PARAMS : params.clone();
+        this.paramsCount = params.length;
+    }
+
+    /**
+     * Create a query from a SQL text and an array of parameters which is not copied. The array is copied if
+     * parameters are appended to the query.
+     *
+     * @param sql    The SQL text
+     * @param params The parameters
+     * @return The query
+     */
+    static SQLQueryBuilder of( String sql, Object[] params )
+    {
+        SQLQueryBuilder query = new SQLQueryBuilder();
+        query.sql = sql;
+        query.params = params;
+        query.paramsCount = params.length;
+        return query;
     }
 
     public SQLQueryBuilder append( String queryPart, Object... params )
     {
-        query.append( queryPart );
-        if( params.length > 0 ) {
-            this.params.addAll( Arrays.asList( params ) );
+        builder().append( queryPart );
+        addParams( params, params.length );
+        return this;
+    }
+
+    /**
+     * Append another query (and its parameters) to this one
+     *
+     * @param query The query to append
+     * @return This builder
+     */
+    public SQLQueryBuilder append( SQLQueryBuilder query )
+    {
+        builder().append( query.getSQL() );
+        addParams( query.params, query.paramsCount );
+        return this;
+    }
+
+    /**
+     * Append a "column in (?,...)" condition. To limit the number of distinct queries sent to the database, the
+     * number of placeholders is rounded up to a power of two by repeating the last value. An empty collection gives a
+     * condition which is always false. Larger collections must be split into several queries, see
+     * {@link SQLRunner#queryIn(SQLRecordMapper, SQLQueryBuilder, String, Collection)}.
+     *
+     * @param column The column (or expression) to compare
+     * @param values The values (at most {@value #MAX_IN_PARAMS})
+     * @return This builder
+     * @throws IllegalArgumentException If there are more than {@value #MAX_IN_PARAMS} values
+     */
+    public SQLQueryBuilder appendIn( String column, Collection<?> values )
+    {
+        int count = values.size();
+        if ( count > MAX_IN_PARAMS ) {
+            throw new IllegalArgumentException( "Too many values in list: " + count + " > " + MAX_IN_PARAMS );
+        }
+
+        StringBuilder builder = builder();
+        if ( count == 0 ) {
+            builder.append( "1 = 0" );
+            return this;
+        }
+
+        int size = bucketSize( count );
+        builder.append( column ).append( " in (" ).append( placeholders( size ) ).append( ')' );
+        if ( paramsCount + size > params.length ) {
+            params = Arrays.copyOf( params, Math.max( paramsCount + size, params.length * 2 ) );
+        }
+        Object value = null;
+        for ( Object v : values ) {
+            value = v;
+            params[ paramsCount++ ] = value;
+        }
+        for ( int i = count; i < size; i++ ) {
+            params[ paramsCount++ ] = value;
         }
         return this;
     }
 
+    /**
+     * Get the number of placeholders used for a list of values: the next power of two
+     *
+     * @param count The number of values, between 1 and {@value #MAX_IN_PARAMS}
+     * @return The number of placeholders
+     */
+    static int bucketSize( int count )
+    {
+        int size = Integer.highestOneBit( count );
+        return size < count ? size << 1 : size;
+    }
+
+    private static String placeholders( int size )
+    {
+        int index = Integer.numberOfTrailingZeros( size );
+        String placeholders = IN_PLACEHOLDERS[ index ];
+        if ( placeholders == null ) {
+            StringBuilder sb = new StringBuilder( size * 2 );
+            for ( int i = 0; i < size; i++ ) {
+                sb.append( i == 0 ? "?" : ",?" );
+            }
+            placeholders = sb.toString();
+            IN_PLACEHOLDERS[ index ] = placeholders;
+        }
+        return placeholders;
+    }
+
+    /**
+     * Get the SQL text of the query
+     *
+     * @return The SQL text
+     */
+    String getSQL()
+    {
+        if ( sql == null ) {
+            sql = query.toString();
+        }
+        return sql;
+    }
+
+    /**
+     * Get the parameters of the query
+     *
+     * @return The parameters (the list must not be modified)
+     */
+    List<Object> getParams()
+    {
+        return Arrays.asList( params ).subList( 0, paramsCount );
+    }
+
+    /**
+     * Get the number of parameters of the query
+     *
+     * @return The parameters count
+     */
+    int getParamsCount()
+    {
+        return paramsCount;
+    }
+
+    /**
+     * Get a parameter of the query
+     *
+     * @param index The parameter index, starting from 0
+     * @return The parameter value
+     */
+    Object getParam( int index )
+    {
+        return params[ index ];
+    }
+
+    private StringBuilder builder()
+    {
+        if ( query == null ) {
+            query = new StringBuilder( sql );
+        }
+        sql = null;
+        return query;
+    }
+
+    private void addParams( Object[] values, int count )
+    {
+        if ( count == 0 ) {
+            return;
+        }
+        if ( paramsCount + count > params.length ) {
+            params = Arrays.copyOf( params, Math.max( paramsCount + count, params.length * 2 ) );
+        }
+        System.arraycopy( values, 0, params, paramsCount, count );
+        paramsCount += count;
+    }
+
 }
@@ -0,0 +1,342 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A cache of query results, shared by several runners and threads. The results are keyed by the mapper class, the SQL
+ * query and its parameters values, and depend on a set of tables. The entries are evicted when the cache is full
+ * (least recently used first), when they expire, or when one of their tables is modified by a {@link SQLRunner} using
+ * this cache.
+ * <p>
+ * When the modification is done in a {@link SQLTransaction}, the entries are invalidated once again after the commit,
+ * and the transaction does not use the cache for the modified tables until then.
+ * <p>
+ * The invalidation is opt-in: only the modifications done by the runners given this cache with
+ * {@link SQLRunner#setQueryCache(SQLQueryCache)} are seen. The results depending on a table modified by another
+ * runner (or outside of the application) are kept until they expire.
+ * <p>
+ * The cached results are shared by all the callers and threads. The lists cannot be modified, and the entities they
+ * contain must be treated as immutable.
+ *
+ * @author Fabien Barbero
+ * @see SQLRunner#setQueryCache(SQLQueryCache)
+ * @see SQLRunner#queryCached(SQLRecordMapper, SQLQueryBuilder, String...)
+ */
+public class SQLQueryCache
+{
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>( 16, 0.75f, true );
+    private final Map<String, Set<Key>> tableKeys = new HashMap<>();
+    private final Map<String, Long> tableGenerations = new HashMap<>();
+    private long generation;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+    private long invalidations;
+
+    /**
+     * Create a new cache
+     *
+     * @param maxEntries The maximum number of cached results
+     * @param ttl        The time to live of the results
+     * @param unit       The time to live unit
+     */
+    public SQLQueryCache( int maxEntries, long ttl, TimeUnit unit )
+    {
+        if ( maxEntries <= 0 ) {
+            throw new IllegalArgumentException( "Invalid cache size: " + maxEntries );
+        }
+        this.maxEntries = maxEntries;
+        this.ttlNanos = unit.toNanos( ttl );
+    }
+
+    /**
+     * Invalidate the results depending on a table
+     *
+     * @param table The table name
+     */
+    public void invalidate( String table )
+    {
+        String name = SQLStatements.normalizeTable( table );
+        synchronized ( this ) {
+            tableGenerations.merge( name, 1L, Long::sum );
+            Set<Key> keys = tableKeys.remove( name );
+            if ( keys != null ) {
+                for ( Key key : new ArrayList<>( keys ) ) {
+                    remove( key );
+                    invalidations++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Invalidate all the results
+     */
+    public synchronized void invalidateAll()
+    {
+        generation++;
+        invalidations += entries.size();
+        entries.clear();
+        tableKeys.clear();
+    }
+
+    /**
+     * Get the number of results found in the cache
+     *
+     * @return The hits count
+     */
+    public synchronized long getHitCount()
+    {
+        return hits;
+    }
+
+    /**
+     * Get the number of results not found in the cache
+     *
+     * @return The misses count
+     */
+    public synchronized long getMissCount()
+    {
+        return misses;
+    }
+
+    /**
+     * Get the ratio of results found in the cache
+     *
+     * @return The hit ratio, between 0 and 1
+     */
+    public synchronized double getHitRatio()
+    {
+        long total = hits + misses;
+        return total == 0 ? 0 : ( double ) hits / total;
+    }
+
+    /**
+     * Get the number of results evicted because the cache was full
+     *
+     * @return The evictions count
+     */
+    public synchronized long getEvictionCount()
+    {
+        return evictions;
+    }
+
+    /**
+     * Get the number of results evicted because they expired
+     *
+     * @return The expirations count
+     */
+    public synchronized long getExpirationCount()
+    {
+        return expirations;
+    }
+
+    /**
+     * Get the number of results evicted because a table they depend on has been modified
+     *
+     * @return The invalidations count
+     */
+    public synchronized long getInvalidationCount()
+    {
+        return invalidations;
+    }
+
+    /**
+     * Get the number of cached results
+     *
+     * @return The cache size
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Get the current generation of some tables. It changes each time the results depending on one of the tables are
+     * invalidated, so the modification of a table does not prevent the results of the other tables to be cached.
+     *
+     * @param tables The normalized names of the tables
+     * @return The generation
+     */
+    synchronized long getGeneration( String[] tables )
+    {
+        // The generations only increase, so their sum changes whenever one of them changes
+        long sum = generation;
+        for ( String table : tables ) {
+            sum += tableGenerations.getOrDefault( table, 0L );
+        }
+        return sum;
+    }
+
+    /**
+     * Get a cached result
+     *
+     * @param key The result key
+     * @return The result, or null if not found
+     */
+    synchronized List<?> get( Key key )
+    {
+        Entry entry = entries.get( key );
+        if ( entry != null && entry.expiration - System.nanoTime() <= 0 ) {
+            remove( key );
+            expirations++;
+            entry = null;
+        }
+        if ( entry == null ) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.result;
+    }
+
+    /**
+     * Cache a result, unless some results have been invalidated since its query has been executed
+     *
+     * @param key        The result key
+     * @param result     The result
+     * @param tables     The normalized names of the tables the result depends on
+     * @param generation The generation of the tables when the query has been executed
+     */
+    synchronized void put( Key key, List<?> result, String[] tables, long generation )
+    {
+        if ( generation != getGeneration( tables ) ) {
+            return;
+        }
+
+        remove( key );
+        entries.put( key, new Entry( result, tables, System.nanoTime() + ttlNanos ) );
+        for ( String table : tables ) {
+            tableKeys.computeIfAbsent( table, t -> new HashSet<>() ).add( key );
+        }
+
+        if ( entries.size() > maxEntries ) {
+            Iterator<Key> it = entries.keySet().iterator();
+            Key eldest = it.next();
+            remove( eldest );
+            evictions++;
+        }
+    }
+
+    private void remove( Key key )
+    {
+        Entry entry = entries.remove( key );
+        if ( entry != null ) {
+            for ( String table : entry.tables ) {
+                Set<Key> keys = tableKeys.get( table );
+                if ( keys != null ) {
+                    keys.remove( key );
+                    if ( keys.isEmpty() ) {
+                        tableKeys.remove( table );
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class Entry
+    {
+
+        private final List<?> result;
+        private final String[] tables;
+        private final long expiration;
+
+        private Entry( List<?> result, String[] tables, long expiration )
+        {
+            this.result = result;
+            this.tables = tables;
+            this.expiration = expiration;
+        }
+    }
+
+    /**
+     * The key of a cached result
+     */
+    static final class Key
+    {
+
+        private final Class<?> mapperType;
+        private final String query;
+        private final List<Object> params;
+
+        Key( Class<?> mapperType, String query, List<Object> params )
+        {
+            this.mapperType = mapperType;
+            this.query = query;
+            this.params = Collections.unmodifiableList( new ArrayList<>( params ) );
+        }
+
+        @Override
+        public boolean equals( Object obj )
+        {
+            if ( obj instanceof Key ) {
+                Key key = ( Key ) obj;
+                return mapperType == key.mapperType && query.equals( key.query ) && paramsEquals( params, key.params );
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int hash = Objects.hash( mapperType, query );
+            for ( Object param : params ) {
+                hash = 31 * hash + ( param instanceof byte[] ? Arrays.hashCode( ( byte[] ) param ) : Objects.hashCode( param ) );
+            }
+            return hash;
+        }
+
+        private static boolean paramsEquals( List<Object> params1, List<Object> params2 )
+        {
+            if ( params1.size() != params2.size() ) {
+                return false;
+            }
+            for ( int i = 0; i < params1.size(); i++ ) {
+                Object p1 = params1.get( i );
+                Object p2 = params2.get( i );
+                if ( p1 instanceof byte[] && p2 instanceof byte[] ) {
+                    if ( !Arrays.equals( ( byte[] ) p1, ( byte[] ) p2 ) ) {
+                        return false;
+                    }
+                } else if ( !Objects.equals( p1, p2 ) ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable query compiled once and executed many times with different parameters. The parameters are identified
+ * by their position ("?") or by their name (":name"), but both styles cannot be mixed. A named parameter may appear
+ * several times in the query.
+ * <p>
+ * The SQL text sent to the database is computed once, so the queries created from a template only hold an array of
+ * parameters and share the same prepared statement when the statements cache is enabled.
+ *
+ * <pre>
+ * SQLQueryTemplate template = SQLQueryTemplate.compile( "select * from USERS where NAME = :name or EMAIL = :name" );
+ * runner.query( mapper, template.bind( "john" ) );
+ * </pre>
+ *
+ * @author Fabien Barbero
+ */
+public final class SQLQueryTemplate
+{
+
+    /**
+     * Compile a query
+     *
+     * @param query The query, using positional or named parameters
+     * @return The template
+     * @throws IllegalArgumentException If the query mixes positional and named parameters
+     */
+    public static SQLQueryTemplate compile( String query )
+    {
+        StringBuilder sql = new StringBuilder( query.length() );
+        List<String> slots = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        int positional = 0;
+        int length = query.length();
+        int i = 0;
+        while ( i < length ) {
+            char c = query.charAt( i );
+            if ( c == '\'' || c == '"' || c == '`' ) {
+                // Literal or quoted identifier
+                int end = query.indexOf( c, i + 1 );
+                end = end < 0 ? length : end + 1;
+                sql.append( query, i, end );
+                i = end;
+
+            } else if ( c == '-' && i + 1 < length && query.charAt( i + 1 ) == '-' ) {
+                int end = query.indexOf( '\n', i );
+                end = end < 0 ? length : end;
+                sql.append( query, i, end );
+                i = end;
+
+            } else if ( c == '/' && i + 1 < length && query.charAt( i + 1 ) == '*' ) {
+                int end = query.indexOf( "*/", i + 2 );
+                end = end < 0 ? length : end + 2;
+                sql.append( query, i, end );
+                i = end;
+
+            } else if ( c == '?' ) {
+                positional++;
+                slots.add( null );
+                sql.append( c );
+                i++;
+
+            } else if ( c == ':' && i + 1 < length && query.charAt( i + 1 ) == ':' ) {
+                // PostgreSQL cast
+                sql.append( "::" );
+                i += 2;
+
+            } else if ( c == ':' && i + 1 < length && Character.isJavaIdentifierStart( query.charAt( i + 1 ) ) ) {
+                int end = i + 2;
+                while ( end < length && Character.isJavaIdentifierPart( query.charAt( end ) ) ) {
+                    end++;
+                }
+                String name = query.substring( i + 1, end );
+                if ( !names.contains( name ) ) {
+                    names.add( name );
+                }
+                slots.add( name );
+                sql.append( '?' );
+                i = end;
+
+            } else {
+                sql.append( c );
+                i++;
+            }
+        }
+
+        if ( positional > 0 && !names.isEmpty() ) {
+            throw new IllegalArgumentException( "Positional and named parameters cannot be mixed: " + query );
+        }
+
+        int[] layout = new int[ slots.size() ];
+        for ( int slot = 0; slot < layout.length; slot++ ) {
+            layout[ slot ] = names.isEmpty() ? slot : names.indexOf( slots.get( slot ) );
+        }
+        return new SQLQueryTemplate( sql.toString(), names, layout );
+    }
+
+    private final String sql;
+    private final List<String> names;
+    private final Map<String, Integer> nameIndexes = new HashMap<>();
+    private final int[] layout;
+    private final boolean identity;
+
+    private SQLQueryTemplate( String sql, List<String> names, int[] layout )
+    {
+        this.sql = sql;
+        this.names = Collections.unmodifiableList( names );
+        this.layout = layout;
+        for ( int i = 0; i < names.size(); i++ ) {
+            nameIndexes.put( names.get( i ), i );
+        }
+        this.identity = names.isEmpty() || names.size() == layout.length;
+    }
+
+    /**
+     * Create a query from this template. For a template using positional parameters, the values are given in the
+     * order of the "?" placeholders. For a template using named parameters, the values are given in the order of
+     * {@link #getParameterNames()}.
+     *
+     * @param values The parameters values
+     * @return The query
+     * @throws IllegalArgumentException If the number of values is invalid
+     */
+    public SQLQueryBuilder bind( Object... values )
+    {
+        int count = names.isEmpty() ? layout.length : names.size();
+        if ( values.length != count ) {
+            throw new IllegalArgumentException( "Expected " + count + " parameters instead of " + values.length + ": " + sql );
+        }
+
+        Object[] params;
+        if ( identity ) {
+            params = values.clone();
+        } else {
+            params = new Object[ layout.length ];
+            for ( int i = 0; i < layout.length; i++ ) {
+                params[ i ] = values[ layout[ i ] ];
+            }
+        }
+        return SQLQueryBuilder.of( sql, params );
+    }
+
+    /**
+     * Create a query from this template using named parameters
+     *
+     * @param values The parameters values by name
+     * @return The query
+     * @throws IllegalArgumentException If a parameter has no value, or if the template uses positional parameters
+     */
+    public SQLQueryBuilder bind( Map<String, ?> values )
+    {
+        if ( names.isEmpty() && layout.length > 0 ) {
+            throw new IllegalArgumentException( "The template has no named parameters: " + sql );
+        }
+        Object[] params = new Object[ layout.length ];
+        for ( int i = 0; i < layout.length; i++ ) {
+            String name = names.get( layout[ i ] );
+            if ( !values.containsKey( name ) ) {
+                throw new IllegalArgumentException( "No value for parameter " + name + ": " + sql );
+            }
+            params[ i ] = values.get( name );
+        }
+        return SQLQueryBuilder.of( sql, params );
+    }
+
+    /**
+     * Get the SQL text sent to the database (using positional parameters)
+     *
+     * @return The SQL text
+     */
+    public String getSQL()
+    {
+        return sql;
+    }
+
+    /**
+     * Get the number of parameters placeholders
+     *
+     * @return The placeholders count
+     */
+    public int getParameterCount()
+    {
+        return layout.length;
+    }
+
+    /**
+     * Get the names of the parameters, in the order of their first use
+     *
+     * @return The names, or an empty list if the template uses positional parameters
+     */
+    public List<String> getParameterNames()
+    {
+        return names;
+    }
+
+    /**
+     * Get the index of a named parameter in the values given to {@link #bind(Object...)}
+     *
+     * @param name The parameter name
+     * @return The parameter index
+     * @throws IllegalArgumentException If the parameter does not exist
+     */
+    public int getParameterIndex( String name )
+    {
+        Integer index = nameIndexes.get( name );
+        if ( index == null ) {
+            throw new IllegalArgumentException( "Unknown parameter " + name + ": " + sql );
+        }
+        return index;
+    }
+
+    @Override
+    public String toString()
+    {
+        return sql;
+    }
+
+}
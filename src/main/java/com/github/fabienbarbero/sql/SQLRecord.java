@@ -27,7 +27,11 @@ import java.time.LocalTime;
 import java.util.*;
 
 /**
- * Represents a SQL record (row). It uses {@link Optional} objects for columns values.
+ * Represents a SQL record (row). It uses {@link Optional} objects for columns values. The primitive getters (like
+ * {@link #getLongOrDefault(String, long)}) can be used to read values without allocating objects.
+ * <p>
+ * A record is a view on the current row of the underlying result set: the same instance is used for all the rows of a
+ * query, so it must not be kept once the entity has been built.
  *
  * @author Fabien Barbero
  */
@@ -35,14 +39,17 @@ public class SQLRecord
 {
 
     private final ResultSet rs;
+    private final SQLColumnIndexes indexes;
 
-    SQLRecord( ResultSet rs )
+    SQLRecord( ResultSet rs, SQLColumnIndexes indexes )
     {
         this.rs = rs;
+        this.indexes = indexes;
     }
 
     /**
-     * Get the available columns from this record
+     * Get the available columns from this record. The name of a column is its label, which is the alias given in the
+     * query if any.
      *
      * @return The columns
      * @throws SQLFaultException If the columns names cannot be returned
@@ -54,7 +61,7 @@ public class SQLRecord
             ResultSetMetaData metaData = rs.getMetaData();
             List<Column> columns = new ArrayList<>( metaData.getColumnCount() );
             for ( int i = 0; i < metaData.getColumnCount(); i++ ) {
-                columns.add( new Column( metaData.getColumnName( i + 1 ),
+                columns.add( new Column( metaData.getColumnLabel( i + 1 ),
                                          metaData.getTableName( i + 1 ) ) );
             }
             return Collections.unmodifiableList( columns );
@@ -73,6 +80,19 @@ public class SQLRecord
      */
     public Optional<String> getString( String column )
             throws SQLFaultException
+    {
+        return getString( columnIndex( column ) );
+    }
+
+    /**
+     * Get an optional String from this record
+     *
+     * @param column The index (starting at 1) of the column containing the String
+     * @return The optional String value
+     * @throws SQLFaultException If the column is unknown or if the value cannot be returned
+     */
+    public Optional<String> getString( int column )
+            throws SQLFaultException
     {
         try {
             return Optional.ofNullable( rs.getString( column ) );
@@ -81,6 +101,70 @@ public class SQLRecord
         }
     }
 
+    /**
+     * Get a String from this record, without wrapping it
+     *
+     * @param column       The column containing the String
+     * @param defaultValue The value returned when the column is null
+     * @return The String value, or the default value if null
+     * @throws SQLFaultException If the column is unknown or if the value cannot be returned
+     */
+    public String getStringOrDefault( String column, String defaultValue )
+            throws SQLFaultException
+    {
+        return getStringOrDefault( columnIndex( column ), defaultValue );
+    }
+
+    /**
+     * Get a String from this record, without wrapping it
+     *
+     * @param column       The index (starting at 1) of the column containing the String
+     * @param defaultValue The value returned when the column is null
+     * @return The String value, or the default value if null
+     * @throws SQLFaultException If the column is unknown or if the value cannot be returned
+     */
+    public String getStringOrDefault( int column, String defaultValue )
+            throws SQLFaultException
+    {
+        try {
+            String value = rs.getString( column );
+            return value == null ? defaultValue : value;
+
+        } catch ( SQLException ex ) {
+            throw new SQLFaultException( "Error getting SQL value", ex );
+        }
+    }
+
+    /**
+     * Get an optional Object from this record. The object type depends on the SQL driver.
+     *
+     * @param column The column containing the Object
+     * @return The optional Object value
+     * @throws SQLFaultException If the column is unknown or if the value cannot be returned
+     */
+    public Optional<Object> getObject( String column )
+            throws SQLFaultException
+    {
+        return getObject( columnIndex( column ) );
+    }
+
+    /**
+     * Get an optional Object from this record. The object type depends on the SQL driver.
+     *
+     * @param column The index (starting at 1) of the column containing the Object
+     * @return The optional Object value
+     * @throws SQLFaultException If the column is unknown or if the value cannot be returned
+     */
+    public Optional<Object> getObject( int column )
+            throws SQLFaultException
+    {
+        try {
+            return Optional.ofNullable( rs.getObject( column ) );
+        } catch ( SQLException ex ) {
+            throw new SQLFaultException( "Error getting SQL value", ex );
+        }
+    }
+
     /**
      * Get an optional Enum from this record. The enums MUST be stored as String in the database.
      *
@@ -92,6 +176,21 @@ public class SQLRecord
      */
     public <E extends Enum<E>> Optional<E> getEnum( String column, Class<E> type )
             throws SQLFaultException
+    {
+        return getEnum( columnIndex( column ), type );
+    }
+
+    /**
+     * Get an optional Enum from this record. The enums MUST be stored as String in the database.
+     *
+     * @param column The index (starting at 1) of the column containing the Enum
+     * @param type   The enum type
+     * @param <E>    The enum type
+     * @return The optional Enum value
+     * @throws SQLFaultException If the column is unknown or if the value cannot be returned
+     */
+    public <E extends Enum<E>> Optional<E> getEnum( int column, Class<E> type )
+            throws SQLFaultException
     {
         return getString( column ).map( str -> Enum.valueOf( type, str ) );
     }
@@ -105,6 +204,19 @@ public class SQLRecord
      */
     public Optional<Blob> getBlob( String column )
             throws SQLFaultException
+    {
+        return getBlob( columnIndex( column ) );
+    }
+
+    /**
+     * Get an optional {@link Blob} from this record
+     *
+     * @param column The index (starting at 1) of the column containing the Blob
+     * @return The optional Blob value
+     * @throws SQLFaultException If the column is unknown or if the value cannot be returned
+     */
+    public Optional<Blob> getBlob( int column )
+            throws SQLFaultException
     {
         try {
             return Optional.ofNullable( rs.getBlob( column ) );
@@ -122,6 +234,19 @@ public class SQLRecord
      */
     public Optional<Clob> getClob( String column )
             throws SQLFaultException
+    {
+        return getClob( columnIndex( column ) );
+    }
+
+    /**
+     * Get an optional {@link Clob} from this record
+     *
+     * @param column The index (starting at 1) of the column containing the Clob
+     * @return The optional Clob value
+     * @throws SQLFaultException If the column is unknown or if the value cannot be returned
+     */
+    public Optional<Clob> getClob( int column )
+            throws SQLFaultException
     {
         try {
             return Optional.ofNullable( rs.getClob( column ) );
@@ -139,6 +264,19 @@ public class SQLRecord
      */
     public Optional<BigDecimal> getBigDecimal( String column )
             throws SQLFaultException
+    {
+        return getBigDecimal( columnIndex( column ) );
+    }
+
+    /**
+     * Get an optional {@link BigDecimal} from this record
+     *
+     * @param column The index (starting at 1) of the column containing the BigDecimal
+     * @return The optional BigDecimal value
+     * @throws SQLFaultException If the column is unknown or if the value cannot be returned
+     */
+    public Optional<BigDecimal> getBigDecimal( int column )
+            throws SQLFaultException
     {
         try {
             return Optional.ofNullable( rs.getBigDecimal( column ) );
@@ -156,6 +294,19 @@ public class SQLRecord
      */
     public Optional<byte[]> getBytes( String column )
             throws SQLFaultException
+    {
+        return getBytes( columnIndex( column ) );
+    }
+
+    /**
+     * Get an optional byte array from this record
+     *
+     * @param column The index (starting at 1) of the column containing the byte array
+     * @return The optional byte array value
+     * @throws SQLFaultException If the column is unknown or if the value cannot be returned
+     */
+    public Optional<byte[]> getBytes( int column )
+            throws SQLFaultException
     {
         try {
             return Optional.ofNullable( rs.getBytes( column ) );
@@ -173,6 +324,19 @@ public class SQLRecord
      */
     public Optional<Integer> getInteger( String column )
             throws SQLFaultException
+    {
+        return getInteger( columnIndex( column ) );
+    }
+
+    /**
+     * Get an optional Integer from this record
+     *
+     * @param column The index (starting at 1) of the column containing the Integer
+     * @return The optional Integer value
+     * @throws SQLFaultException If the column is unknown or if the value cannot be returned
+     */
+    public Optional<Integer> getInteger( int column )
+            throws SQLFaultException
     {
         try {
             int value = rs.getInt( column );
@@ -195,6 +359,19 @@ public class SQLRecord
      */
     public Optional<Float> getFloat( String column )
             throws SQLFaultException
+    {
+        return getFloat( columnIndex( column ) );
+    }
+
+    /**
+     * Get an optional Float from this record
+     *
+     * @param column The index (starting at 1) of the column containing the Float
+     * @return The optional Float value
+     * @throws SQLFaultException If the column is unknown or if the value cannot be returned
+     */
+    public Optional<Float> getFloat( int column )
+            throws SQLFaultException
     {
         try {
             float value = rs.getFloat( column );
@@ -217,6 +394,19 @@ public class SQLRecord
      */
     public Optional<Long> getLong( String column )
             throws SQLFaultException
+    {
+        return getLong( columnIndex( column ) );
+    }
+
+    /**
+     * Get an optional Long from this record
+     *
+     * @param column The index (starting at 1) of the column containing the Long
+     * @return The optional Long value
+     * @throws SQLFaultException If the column is unknown or if the value cannot be returned
+     */
+    public Optional<Long> getLong( int column )
+            throws SQLFaultException
     {
         try {
             long value = rs.getLong( column );
@@ -239,6 +429,19 @@ public class SQLRecord
      */
     public Optional<Short> getShort( String column )
             throws SQLFaultException
+    {
+        return getShort( columnIndex( column ) );
+    }
+
+    /**
+     * Get an optional Short from this record
+     *
+     * @param column The index (starting at 1) of the column containing the Short
+     * @return The optional Short value
+     * @throws SQLFaultException If the column is unknown or if the value cannot be returned
+     */
+    public Optional<Short> getShort( int column )
+            throws SQLFaultException
     {
         try {
             short value = rs.getShort( column );
@@ -261,6 +464,19 @@ public class SQLRecord
      */
     public Optional<LocalDate> getLocalDate( String column )
             throws SQLFaultException
+    {
+        return getLocalDate( columnIndex( column ) );
+    }
+
+    /**
+     * Get an optional {@link LocalDate} from this record
+     *
+     * @param column The index (starting at 1) of the column containing the LocalDate
+     * @return The optional LocalDate value
+     * @throws SQLFaultException If the column is unknown or if the value cannot be returned
+     */
+    public Optional<LocalDate> getLocalDate( int column )
+            throws SQLFaultException
     {
         try {
             Date date = rs.getDate( column );
@@ -280,6 +496,19 @@ public class SQLRecord
      */
     public Optional<Instant> getInstant( String column )
             throws SQLFaultException
+    {
+        return getInstant( columnIndex( column ) );
+    }
+
+    /**
+     * Get an optional {@link Instant} from this record
+     *
+     * @param column The index (starting at 1) of the column containing the Instant
+     * @return The optional Instant value
+     * @throws SQLFaultException If the column is unknown or if the value cannot be returned
+     */
+    public Optional<Instant> getInstant( int column )
+            throws SQLFaultException
     {
         try {
             Timestamp ts = rs.getTimestamp( column );
@@ -299,6 +528,19 @@ public class SQLRecord
      */
     public Optional<LocalTime> getLocalTime( String column )
             throws SQLFaultException
+    {
+        return getLocalTime( columnIndex( column ) );
+    }
+
+    /**
+     * Get an optional {@link LocalTime} from this record
+     *
+     * @param column The index (starting at 1) of the column containing the LocalTime
+     * @return The optional LocalTime value
+     * @throws SQLFaultException If the column is unknown or if the value cannot be returned
+     */
+    public Optional<LocalTime> getLocalTime( int column )
+            throws SQLFaultException
     {
         try {
             Time time = rs.getTime( column );
@@ -318,6 +560,19 @@ public class SQLRecord
      */
     public Optional<Boolean> getBoolean( String column )
             throws SQLFaultException
+    {
+        return getBoolean( columnIndex( column ) );
+    }
+
+    /**
+     * Get an optional Boolean from this record
+     *
+     * @param column The index (starting at 1) of the column containing the Boolean
+     * @return The optional Boolean value
+     * @throws SQLFaultException If the column is unknown or if the value cannot be returned
+     */
+    public Optional<Boolean> getBoolean( int column )
+            throws SQLFaultException
     {
         try {
             boolean value = rs.getBoolean( column );
@@ -331,6 +586,254 @@ public class SQLRecord
         }
     }
 
+    /**
+     * Get a long value from this record, without boxing it
+     *
+     * @param column       The column containing the long
+     * @param defaultValue The value returned when the column is null
+     * @return The long value, or the default value if null
+     * @throws SQLFaultException If the column is unknown or if the value cannot be returned
+     */
+    public long getLongOrDefault( String column, long defaultValue )
+            throws SQLFaultException
+    {
+        return getLongOrDefault( columnIndex( column ), defaultValue );
+    }
+
+    /**
+     * Get a long value from this record, without boxing it
+     *
+     * @param column       The index (starting at 1) of the column containing the long
+     * @param defaultValue The value returned when the column is null
+     * @return The long value, or the default value if null
+     * @throws SQLFaultException If the column is unknown or if the value cannot be returned
+     */
+    public long getLongOrDefault( int column, long defaultValue )
+            throws SQLFaultException
+    {
+        try {
+            long value = rs.getLong( column );
+            return rs.wasNull() ? defaultValue : value;
+
+        } catch ( SQLException ex ) {
+            throw new SQLFaultException( "Error getting SQL value", ex );
+        }
+    }
+
+    /**
+     * Get a int value from this record, without boxing it
+     *
+     * @param column       The column containing the int
+     * @param defaultValue The value returned when the column is null
+     * @return The int value, or the default value if null
+     * @throws SQLFaultException If the column is unknown or if the value cannot be returned
+     */
+    public int getIntOrDefault( String column, int defaultValue )
+            throws SQLFaultException
+    {
+        return getIntOrDefault( columnIndex( column ), defaultValue );
+    }
+
+    /**
+     * Get a int value from this record, without boxing it
+     *
+     * @param column       The index (starting at 1) of the column containing the int
+     * @param defaultValue The value returned when the column is null
+     * @return The int value, or the default value if null
+     * @throws SQLFaultException If the column is unknown or if the value cannot be returned
+     */
+    public int getIntOrDefault( int column, int defaultValue )
+            throws SQLFaultException
+    {
+        try {
+            int value = rs.getInt( column );
+            return rs.wasNull() ? defaultValue : value;
+
+        } catch ( SQLException ex ) {
+            throw new SQLFaultException( "Error getting SQL value", ex );
+        }
+    }
+
+    /**
+     * Get a float value from this record, without boxing it
+     *
+     * @param column       The column containing the float
+     * @param defaultValue The value returned when the column is null
+     * @return The float value, or the default value if null
+     * @throws SQLFaultException If the column is unknown or if the value cannot be returned
+     */
+    public float getFloatOrDefault( String column, float defaultValue )
+            throws SQLFaultException
+    {
+        return getFloatOrDefault( columnIndex( column ), defaultValue );
+    }
+
+    /**
+     * Get a float value from this record, without boxing it
+     *
+     * @param column       The index (starting at 1) of the column containing the float
+     * @param defaultValue The value returned when the column is null
+     * @return The float value, or the default value if null
+     * @throws SQLFaultException If the column is unknown or if the value cannot be returned
+     */
+    public float getFloatOrDefault( int column, float defaultValue )
+            throws SQLFaultException
+    {
+        try {
+            float value = rs.getFloat( column );
+            return rs.wasNull() ? defaultValue : value;
+
+        } catch ( SQLException ex ) {
+            throw new SQLFaultException( "Error getting SQL value", ex );
+        }
+    }
+
+    /**
+     * Get a double value from this record, without boxing it
+     *
+     * @param column       The column containing the double
+     * @param defaultValue The value returned when the column is null
+     * @return The double value, or the default value if null
+     * @throws SQLFaultException If the column is unknown or if the value cannot be returned
+     */
+    public double getDoubleOrDefault( String column, double defaultValue )
+            throws SQLFaultException
+    {
+        return getDoubleOrDefault( columnIndex( column ), defaultValue );
+    }
+
+    /**
+     * Get a double value from this record, without boxing it
+     *
+     * @param column       The index (starting at 1) of the column containing the double
+     * @param defaultValue The value returned when the column is null
+     * @return The double value, or the default value if null
+     * @throws SQLFaultException If the column is unknown or if the value cannot be returned
+     */
+    public double getDoubleOrDefault( int column, double defaultValue )
+            throws SQLFaultException
+    {
+        try {
+            double value = rs.getDouble( column );
+            return rs.wasNull() ? defaultValue : value;
+
+        } catch ( SQLException ex ) {
+            throw new SQLFaultException( "Error getting SQL value", ex );
+        }
+    }
+
+    /**
+     * Get a boolean value from this record, without boxing it
+     *
+     * @param column       The column containing the boolean
+     * @param defaultValue The value returned when the column is null
+     * @return The boolean value, or the default value if null
+     * @throws SQLFaultException If the column is unknown or if the value cannot be returned
+     */
+    public boolean getBooleanOrDefault( String column, boolean defaultValue )
+            throws SQLFaultException
+    {
+        return getBooleanOrDefault( columnIndex( column ), defaultValue );
+    }
+
+    /**
+     * Get a boolean value from this record, without boxing it
+     *
+     * @param column       The index (starting at 1) of the column containing the boolean
+     * @param defaultValue The value returned when the column is null
+     * @return The boolean value, or the default value if null
+     * @throws SQLFaultException If the column is unknown or if the value cannot be returned
+     */
+    public boolean getBooleanOrDefault( int column, boolean defaultValue )
+            throws SQLFaultException
+    {
+        try {
+            boolean value = rs.getBoolean( column );
+            return rs.wasNull() ? defaultValue : value;
+
+        } catch ( SQLException ex ) {
+            throw new SQLFaultException( "Error getting SQL value", ex );
+        }
+    }
+
+    /**
+     * Indicates if a column value is null
+     *
+     * @param column The column to check
+     * @return true if the value is null
+     * @throws SQLFaultException If the column is unknown or if the value cannot be returned
+     */
+    public boolean isNull( String column )
+            throws SQLFaultException
+    {
+        return isNull( columnIndex( column ) );
+    }
+
+    /**
+     * Indicates if a column value is null. The numeric and boolean columns are checked using the primitive getters,
+     * without allocating objects.
+     *
+     * @param column The index (starting at 1) of the column to check
+     * @return true if the value is null
+     * @throws SQLFaultException If the column is unknown or if the value cannot be returned
+     */
+    public boolean isNull( int column )
+            throws SQLFaultException
+    {
+        try {
+            switch ( indexes.typeOf( column ) ) {
+                case Types.TINYINT:
+                case Types.SMALLINT:
+                case Types.INTEGER:
+                case Types.BIGINT:
+                    rs.getLong( column );
+                    break;
+                case Types.REAL:
+                case Types.FLOAT:
+                case Types.DOUBLE:
+                    rs.getDouble( column );
+                    break;
+                case Types.BIT:
+                case Types.BOOLEAN:
+                    rs.getBoolean( column );
+                    break;
+                default:
+                    // No primitive getter for the other types
+                    return rs.getObject( column ) == null;
+            }
+            return rs.wasNull();
+        } catch ( SQLException ex ) {
+            throw new SQLFaultException( "Error getting SQL value", ex );
+        }
+    }
+
+    /**
+     * Indicates if the last value read from this record was null. It can be used after one of the primitive getters
+     * to check the value without reading it twice.
+     *
+     * @return true if the last value read was null
+     * @throws SQLFaultException If the state cannot be returned
+     */
+    public boolean wasNull()
+            throws SQLFaultException
+    {
+        try {
+            return rs.wasNull();
+        } catch ( SQLException ex ) {
+            throw new SQLFaultException( "Error getting SQL value", ex );
+        }
+    }
+
+    private int columnIndex( String column )
+            throws SQLFaultException
+    {
+        try {
+            return indexes.indexOf( column );
+        } catch ( SQLException ex ) {
+            throw new SQLFaultException( "Unknown SQL column: " + column, ex );
+        }
+    }
+
     /**
      * Represents a column in a {@link SQLRecord}
      */
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Execute units of work in new transactions, retrying them when they fail because of a concurrent transaction. The
+ * transaction is rolled back and the work is executed again after a random delay, which grows exponentially with the
+ * attempts, until the maximum attempts count or the deadline is reached.
+ * <p>
+ * By default, the following errors are retried:
+ * <ul>
+ * <li>serialization failures (SQL state 40001) and deadlocks (SQL state 40P01, or
+ * {@link SQLTransactionRollbackException})</li>
+ * <li>MySQL deadlocks (error 1213) and lock wait timeouts (error 1205)</li>
+ * <li>SQLite busy (error 5) and locked (error 6) databases</li>
+ * </ul>
+ * The work may be executed several times, so it must not have side effects outside of the transaction.
+ *
+ * @author Fabien Barbero
+ */
+public class SQLRetryExecutor
+{
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( SQLRetryExecutor.class );
+
+    /**
+     * Indicates if an error is caused by a concurrent transaction and can be retried
+     */
+    public static final Predicate<SQLException> TRANSIENT_ERRORS = SQLRetryExecutor::isTransient;
+
+    private final DataSource ds;
+    private int maxAttempts = 5;
+    private long initialBackoffNanos = TimeUnit.MILLISECONDS.toNanos( 10 );
+    private long maxBackoffNanos = TimeUnit.SECONDS.toNanos( 1 );
+    private long deadlineNanos = TimeUnit.SECONDS.toNanos( 10 );
+    private Predicate<SQLException> retryable = TRANSIENT_ERRORS;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+
+    /**
+     * Create a new executor
+     *
+     * @param ds The data source providing the connections
+     */
+    public SQLRetryExecutor( DataSource ds )
+    {
+        this.ds = ds;
+    }
+
+    /**
+     * Set the maximum number of times a work is executed. The default value is 5.
+     *
+     * @param maxAttempts The maximum attempts count
+     */
+    public void setMaxAttempts( int maxAttempts )
+    {
+        if ( maxAttempts <= 0 ) {
+            throw new IllegalArgumentException( "Invalid attempts count: " + maxAttempts );
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Set the delay between the attempts. The delay is doubled after each attempt (up to the maximum value), and a
+     * random delay between 0 and this value is used. The default values are 10 milliseconds and 1 second.
+     *
+     * @param initial The delay after the first attempt
+     * @param max     The maximum delay
+     * @param unit    The delays unit
+     */
+    public void setBackoff( long initial, long max, TimeUnit unit )
+    {
+        this.initialBackoffNanos = unit.toNanos( initial );
+        this.maxBackoffNanos = unit.toNanos( max );
+    }
+
+    /**
+     * Set the maximum time spent executing a work, including the delays between the attempts. No attempt is started
+     * after the deadline. The default value is 10 seconds.
+     *
+     * @param deadline The deadline
+     * @param unit     The deadline unit
+     */
+    public void setDeadline( long deadline, TimeUnit unit )
+    {
+        this.deadlineNanos = unit.toNanos( deadline );
+    }
+
+    /**
+     * Set the function indicating if an error can be retried. The default function is {@link #TRANSIENT_ERRORS}.
+     *
+     * @param retryable The function
+     */
+    public void setRetryable( Predicate<SQLException> retryable )
+    {
+        this.retryable = retryable;
+    }
+
+    /**
+     * Execute a work in a read/write transaction, which is committed if the work completes normally
+     *
+     * @param <T>  The result type
+     * @param work The work to execute
+     * @return The work result
+     * @throws SQLFaultException SQL error, when it cannot be retried or when all the attempts failed
+     */
+    public <T> T call( Function<SQLTransaction, T> work )
+            throws SQLFaultException
+    {
+        return call( false, null, work );
+    }
+
+    /**
+     * Execute a work in a read/write transaction, which is committed if the work completes normally
+     *
+     * @param work The work to execute
+     * @throws SQLFaultException SQL error, when it cannot be retried or when all the attempts failed
+     */
+    public void run( Consumer<SQLTransaction> work )
+            throws SQLFaultException
+    {
+        call( false, null, tx -> {
+            work.accept( tx );
+            return null;
+        } );
+    }
+
+    /**
+     * Execute a work in a transaction, which is committed if the work completes normally
+     *
+     * @param <T>      The result type
+     * @param readOnly Indicates if the transaction must be read-only
+     * @param level    The transaction isolation level, or null to use the default one
+     * @param work     The work to execute
+     * @return The work result
+     * @throws SQLFaultException SQL error, when it cannot be retried or when all the attempts failed
+     */
+    public <T> T call( boolean readOnly, SQLTransaction.IsolationLevel level, Function<SQLTransaction, T> work )
+            throws SQLFaultException
+    {
+        calls.increment();
+        long deadline = System.nanoTime() + deadlineNanos;
+        for ( int attempt = 1;; attempt++ ) {
+            try {
+                return execute( readOnly, level, work );
+
+            } catch ( SQLFaultException ex ) {
+                if ( !retryable.test( ex.getCause() ) ) {
+                    throw ex;
+                }
+
+                long delay = backoff( attempt );
+                if ( attempt >= maxAttempts || System.nanoTime() + delay >= deadline ) {
+                    exhausted.increment();
+                    throw ex;
+                }
+
+                retries.increment();
+                LOGGER.debug( "Retrying transaction after error {} (attempt {})", ex.getCause().getMessage(), attempt );
+                sleep( delay, ex );
+            }
+        }
+    }
+
+    /**
+     * Get the number of works executed
+     *
+     * @return The calls count
+     */
+    public long getCallCount()
+    {
+        return calls.sum();
+    }
+
+    /**
+     * Get the number of attempts which have been retried
+     *
+     * @return The retries count
+     */
+    public long getRetryCount()
+    {
+        return retries.sum();
+    }
+
+    /**
+     * Get the number of works which failed after the maximum attempts or after the deadline
+     *
+     * @return The exhausted works count
+     */
+    public long getExhaustedCount()
+    {
+        return exhausted.sum();
+    }
+
+    private <T> T execute( boolean readOnly, SQLTransaction.IsolationLevel level, Function<SQLTransaction, T> work )
+    {
+        try ( SQLTransaction tx = SQLTransaction.begin( ds, readOnly, level ) ) {
+            T result;
+            try {
+                result = work.apply( tx );
+                tx.commit();
+
+            } catch ( RuntimeException ex ) {
+                try {
+                    tx.rollback();
+                } catch ( SQLFaultException rollbackEx ) {
+                    ex.addSuppressed( rollbackEx );
+                }
+                throw ex;
+            }
+            return result;
+        }
+    }
+
+    private long backoff( int attempt )
+    {
+        long max = initialBackoffNanos << Math.min( attempt - 1, 30 );
+        if ( max <= 0 || max > maxBackoffNanos ) {
+            max = maxBackoffNanos;
+        }
+        return max <= 0 ? 0 : ThreadLocalRandom.current().nextLong( max + 1 );
+    }
+
+    private static void sleep( long nanos, SQLFaultException error )
+    {
+        try {
+            TimeUnit.NANOSECONDS.sleep( nanos );
+        } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            throw error;
+        }
+    }
+
+    private static boolean isTransient( SQLException ex )
+    {
+        for ( SQLException current = ex; current != null; current = current.getNextException() ) {
+            if ( current instanceof SQLTransactionRollbackException ) {
+                return true;
+            }
+            String state = current.getSQLState();
+            if ( "40001".equals( state ) || "40P01".equals( state ) ) {
+                return true;
+            }
+            int code = current.getErrorCode();
+            if ( code == 1213 || code == 1205 ) {
+                // MySQL deadlock and lock wait timeout
+                return true;
+            }
+            if ( current.getClass().getName().startsWith( "org.sqlite." ) && ( code == 5 || code == 6 ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
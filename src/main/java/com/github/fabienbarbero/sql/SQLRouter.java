@@ -0,0 +1,361 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Begin transactions on a primary database or on its replicas. The read-only transactions are sent to the replica
+ * with the least transactions in progress, the other ones to the primary database. If a replica cannot provide a
+ * connection, the primary database is used. The database is chosen when the transaction acquires its connection, so
+ * a transaction which does not execute any statement does not use a connection.
+ * <p>
+ * Since the replicas may lag behind the primary database, a thread can read its own writes: when the primary database
+ * has been used by a thread during the last milliseconds (see {@link #setReadYourWritesWindow(long, TimeUnit)}), the
+ * read-only transactions of this thread are sent to the primary database.
+ *
+ * @author Fabien Barbero
+ */
+public class SQLRouter
+{
+
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger( SQLRouter.class );
+
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private final ThreadLocal<AtomicLong> lastWrite = ThreadLocal.withInitial( () -> new AtomicLong( Long.MIN_VALUE ) );
+    private long readYourWritesNanos;
+    private final LongAdder primaryReads = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+
+    /**
+     * Create a new router
+     *
+     * @param primary  The primary data source, used for the read-write transactions
+     * @param replicas The replicas data sources, used for the read-only transactions
+     */
+    public SQLRouter( DataSource primary, List<? extends DataSource> replicas )
+    {
+        this.primary = primary;
+        for ( DataSource replica : replicas ) {
+            this.replicas.add( new Replica( replica ) );
+        }
+    }
+
+    /**
+     * Set the time during which the read-only transactions of a thread are sent to the primary database after a
+     * transaction using it. The stickiness is disabled by default.
+     *
+     * @param window The window duration, or 0 to disable the stickiness
+     * @param unit   The window unit
+     */
+    public void setReadYourWritesWindow( long window, TimeUnit unit )
+    {
+        this.readYourWritesNanos = unit.toNanos( window );
+    }
+
+    /**
+     * Begin a new read-write transaction on the primary database
+     *
+     * @return The new transaction
+     * @throws SQLFaultException Error getting a connection
+     */
+    public SQLTransaction begin()
+            throws SQLFaultException
+    {
+        return begin( false, null );
+    }
+
+    /**
+     * Begin a new transaction
+     *
+     * @param readOnly Indicates if the transaction must be read-only. A read-only transaction is sent to a replica.
+     * @param level    The isolation level. If null the default value is used
+     * @return The new transaction
+     * @throws SQLFaultException Error getting a connection
+     */
+    public SQLTransaction begin( boolean readOnly, SQLTransaction.IsolationLevel level )
+            throws SQLFaultException
+    {
+        return SQLTransaction.begin( new Route( readOnly ), readOnly, level );
+    }
+
+    /**
+     * Get a SQL access
+     *
+     * @param readOnly Indicates if the access must be read-only. A read-only access is sent to a replica.
+     * @return The SQL access
+     * @throws SQLFaultException Error getting a connection
+     */
+    public SQLAccess access( boolean readOnly )
+            throws SQLFaultException
+    {
+        return SQLAccess.of( new Route( readOnly ), readOnly );
+    }
+
+    /**
+     * Indicates that the current thread has written to the primary database without using this router. The next
+     * read-only transactions of the thread are sent to the primary database during the read-your-writes window.
+     */
+    public void markWritten()
+    {
+        lastWrite.get().set( System.nanoTime() );
+    }
+
+    /**
+     * Get the number of transactions in progress on a replica
+     *
+     * @param replica The replica index
+     * @return The transactions count
+     */
+    public int getOutstandingCount( int replica )
+    {
+        return replicas.get( replica ).outstanding.get();
+    }
+
+    /**
+     * Get the number of read-only transactions sent to a replica
+     *
+     * @param replica The replica index
+     * @return The transactions count
+     */
+    public long getReadCount( int replica )
+    {
+        return replicas.get( replica ).reads.sum();
+    }
+
+    /**
+     * Get the number of read-only transactions sent to the primary database, because the thread had written recently
+     * or because no replica was available
+     *
+     * @return The transactions count
+     */
+    public long getPrimaryReadCount()
+    {
+        return primaryReads.sum();
+    }
+
+    /**
+     * Get the number of read-write transactions
+     *
+     * @return The transactions count
+     */
+    public long getWriteCount()
+    {
+        return writes.sum();
+    }
+
+    private Connection getConnection( boolean readOnly, AtomicLong last )
+            throws SQLException
+    {
+        if ( !readOnly ) {
+            writes.increment();
+            last.set( System.nanoTime() );
+            return track( primary.getConnection(), null, last );
+        }
+
+        long lastNanos = last.get();
+        boolean sticky = lastNanos != Long.MIN_VALUE && System.nanoTime() - lastNanos < readYourWritesNanos;
+        Replica replica = sticky ? null : select();
+        if ( replica != null ) {
+            replica.outstanding.incrementAndGet();
+            try {
+                Connection conn = track( replica.ds.getConnection(), replica, last );
+                replica.reads.increment();
+                return conn;
+            } catch ( SQLException | RuntimeException ex ) {
+                replica.outstanding.decrementAndGet();
+                LOGGER.warn( "Error getting a replica connection, using the primary database", ex );
+            }
+        }
+
+        primaryReads.increment();
+        return track( primary.getConnection(), null, last );
+    }
+
+    private Replica select()
+    {
+        int size = replicas.size();
+        if ( size == 0 ) {
+            return null;
+        }
+
+        // Rotate the first replica so that the ties are balanced
+        int start = Math.floorMod( next.getAndIncrement(), size );
+        Replica best = null;
+        for ( int i = 0; i < size; i++ ) {
+            Replica replica = replicas.get( ( start + i ) % size );
+            if ( best == null || replica.outstanding.get() < best.outstanding.get() ) {
+                best = replica;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Wrap a connection to be notified when it is closed
+     *
+     * @param conn    The connection
+     * @param replica The replica providing the connection, or null for a primary connection
+     * @param last    The time of the last use of the primary database by the thread which began the transaction
+     * @return The wrapped connection
+     */
+    private Connection track( Connection conn, Replica replica, AtomicLong last )
+    {
+        boolean[] closed = new boolean[ 1 ];
+        return ( Connection ) Proxy.newProxyInstance( Connection.class.getClassLoader(), new Class<?>[]{ Connection.class }, ( proxy, method, args ) -> {
+            switch ( method.getName() ) {
+                case "close":
+                    if ( !closed[ 0 ] ) {
+                        closed[ 0 ] = true;
+                        if ( replica != null ) {
+                            replica.outstanding.decrementAndGet();
+                        } else {
+                            last.set( System.nanoTime() );
+                        }
+                    }
+                    break;
+                case "equals":
+                    return proxy == args[ 0 ];
+                case "hashCode":
+                    return System.identityHashCode( proxy );
+                default:
+                    break;
+            }
+            try {
+                return method.invoke( conn, args );
+            } catch ( InvocationTargetException ex ) {
+                throw ex.getCause();
+            }
+        } );
+    }
+
+    /**
+     * The data source of a transaction, choosing the database when the connection is acquired. The read-your-writes
+     * window of the thread which began the transaction is used, even if the connection is acquired by another thread.
+     */
+    private final class Route
+            implements DataSource
+    {
+
+        private final boolean readOnly;
+        private final AtomicLong last = lastWrite.get();
+
+        private Route( boolean readOnly )
+        {
+            this.readOnly = readOnly;
+        }
+
+        @Override
+        public Connection getConnection()
+                throws SQLException
+        {
+            return SQLRouter.this.getConnection( readOnly, last );
+        }
+
+        @Override
+        public Connection getConnection( String username, String password )
+                throws SQLException
+        {
+            throw new SQLFeatureNotSupportedException( "The routed connections use the credentials of the data sources" );
+        }
+
+        @Override
+        public PrintWriter getLogWriter()
+                throws SQLException
+        {
+            return primary.getLogWriter();
+        }
+
+        @Override
+        public void setLogWriter( PrintWriter out )
+                throws SQLException
+        {
+            primary.setLogWriter( out );
+        }
+
+        @Override
+        public void setLoginTimeout( int seconds )
+                throws SQLException
+        {
+            primary.setLoginTimeout( seconds );
+        }
+
+        @Override
+        public int getLoginTimeout()
+                throws SQLException
+        {
+            return primary.getLoginTimeout();
+        }
+
+        @Override
+        public Logger getParentLogger()
+                throws SQLFeatureNotSupportedException
+        {
+            return primary.getParentLogger();
+        }
+
+        @Override
+        public <T> T unwrap( Class<T> iface )
+                throws SQLException
+        {
+            if ( iface.isInstance( this ) ) {
+                return iface.cast( this );
+            }
+            return primary.unwrap( iface );
+        }
+
+        @Override
+        public boolean isWrapperFor( Class<?> iface )
+                throws SQLException
+        {
+            return iface.isInstance( this ) || primary.isWrapperFor( iface );
+        }
+    }
+
+    private static final class Replica
+    {
+
+        private final DataSource ds;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final LongAdder reads = new LongAdder();
+
+        private Replica( DataSource ds )
+        {
+            this.ds = ds;
+        }
+    }
+
+}
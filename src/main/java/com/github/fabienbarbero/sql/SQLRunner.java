@@ -19,15 +19,10 @@
 package com.github.fabienbarbero.sql;
 
 import java.sql.Connection;
-import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Time;
-import java.sql.Timestamp;
-import java.time.Instant;
-import java.time.LocalDate;
-import java.time.LocalTime;
+import java.sql.Statement;
 import java.util.*;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
@@ -38,16 +33,132 @@ import java.util.stream.StreamSupport;
 public class SQLRunner
 {
 
+    /**
+     * The default number of rows sent at once by {@link #executeBatch(String, Iterable)}
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     * The prefix of the temporary tables used by {@link #queryIn(SQLRecordMapper, SQLQueryBuilder, String, Collection)}
+     */
+    private static final String KEYS_TABLE = "SQL_API_KEYS";
+    private static final ThreadLocal<int[]> KEYS_TABLE_DEPTH = ThreadLocal.withInitial( () -> new int[ 1 ] );
+
     private final Connection conn;
+    private final HasSQLConnection source;
+    private SQLParameterBinders binders = SQLParameterBinders.getDefault();
+    private SQLQueryCache queryCache;
+    private int tempTableThreshold = Integer.MAX_VALUE;
+    private String tempTableKeyType;
 
     public SQLRunner( Connection conn )
     {
         this.conn = conn;
+        this.source = null;
     }
 
     public SQLRunner( HasSQLConnection tx )
     {
-        this.conn = tx.getConnection();
+        this.conn = null;
+        this.source = tx;
+    }
+
+    /**
+     * Set the registry used to bind the queries parameters. By default {@link SQLParameterBinders#getDefault()} is
+     * used.
+     *
+     * @param binders The parameters binders
+     */
+    public void setParameterBinders( SQLParameterBinders binders )
+    {
+        this.binders = binders;
+    }
+
+    /**
+     * Set the cache used by {@link #queryCached(SQLRecordMapper, SQLQueryBuilder, String...)}. The results depending
+     * on a table are invalidated when the table is modified by this runner, and once again when the transaction is
+     * committed. The modifications done by the runners without this cache are not seen, so all the runners modifying
+     * the cached tables must use the same cache.
+     *
+     * @param queryCache The cache, or null to disable it
+     */
+    public void setQueryCache( SQLQueryCache queryCache )
+    {
+        this.queryCache = queryCache;
+    }
+
+    /**
+     * Use a temporary table in {@link #queryIn(SQLRecordMapper, SQLQueryBuilder, String, Collection)} when the number
+     * of values is greater than a threshold. Large "in" lists may exceed the number of parameters allowed by the
+     * database and often lead to poor execution plans. The temporary table is disabled by default since its creation
+     * is not supported by all the databases (or in read-only transactions).
+     *
+     * @param threshold The number of values above which a temporary table is used
+     * @param keyType   The SQL type of the values (for instance "bigint" or "varchar(36)")
+     */
+    public void setTempTableThreshold( int threshold, String keyType )
+    {
+        if ( threshold < 0 ) {
+            throw new IllegalArgumentException( "Invalid threshold: " + threshold );
+        }
+        if ( keyType == null ) {
+            throw new IllegalArgumentException( "The key type is required" );
+        }
+        this.tempTableThreshold = threshold;
+        this.tempTableKeyType = keyType;
+    }
+
+    /**
+     * Get the number of values above which a temporary table is used
+     *
+     * @return The threshold, or {@link Integer#MAX_VALUE} if the temporary table is disabled
+     * @see #setTempTableThreshold(int, String)
+     */
+    public int getTempTableThreshold()
+    {
+        return tempTableThreshold;
+    }
+
+    /**
+     * Select entities from a given SQL query, using the query cache if any. The mappers are identified by their class
+     * in the cache, so a mapper must always build the same entities from the same records.
+     *
+     * @param <T>    The entity type to return
+     * @param mapper The mapper used to build Java entities
+     * @param query  The query to select entities
+     * @param tables The tables the query depends on
+     * @return The entities found. The list cannot be modified, and the entities may be shared with other callers so
+     * they must be treated as immutable.
+     * @throws SQLFaultException Query error
+     * @see #setQueryCache(SQLQueryCache)
+     */
+    @SuppressWarnings( "unchecked" )
+    public <T> List<T> queryCached( SQLRecordMapper<T> mapper, SQLQueryBuilder query, String... tables )
+            throws SQLFaultException
+    {
+        SQLQueryCache cache = queryCache;
+        if ( cache == null ) {
+            return Collections.unmodifiableList( query( mapper, query ) );
+        }
+
+        SQLTransaction tx = getTransaction();
+        String[] names = new String[ tables.length ];
+        for ( int i = 0; i < tables.length; i++ ) {
+            names[ i ] = SQLStatements.normalizeTable( tables[ i ] );
+            if ( tx != null && tx.isTableWritten( names[ i ] ) ) {
+                // The transaction may read its own uncommitted changes
+                return Collections.unmodifiableList( query( mapper, query ) );
+            }
+        }
+
+        SQLQueryCache.Key key = new SQLQueryCache.Key( mapper.getClass(), query.getSQL(), query.getParams() );
+        List<T> result = ( List<T> ) cache.get( key );
+        if ( result == null ) {
+            long generation = cache.getGeneration( names );
+            result = Collections.unmodifiableList( query( mapper, query ) );
+            cache.put( key, result, names, generation );
+        }
+        return result;
     }
 
     /**
@@ -62,17 +173,99 @@ public class SQLRunner
     public <T> List<T> query( SQLRecordMapper<T> mapper, SQLQueryBuilder query )
             throws SQLFaultException
     {
-        try ( PreparedStatement st = prepareStatement( query, false ) ) {
+        SQLProbe probe = SQLProbe.start( query );
+        try {
+            PreparedStatement st = prepareStatement( query, false );
+            probe.prepared();
             try ( ResultSet rs = st.executeQuery() ) {
+                probe.executed();
                 List<T> list = new ArrayList<>();
+                SQLRecord record = new SQLRecord( rs, new SQLColumnIndexes( rs ) );
                 while ( rs.next() ) {
-                    list.add( mapper.buildEntity( new SQLRecord( rs ) ) );
+                    list.add( mapper.buildEntity( record ) );
                 }
+                probe.completed( list.size() );
                 return list;
+
+            } finally {
+                closeStatement( st );
             }
 
         } catch ( SQLException ex ) {
+            probe.failed( ex );
             throw new SQLFaultException( "Error executing SQL query", ex );
+        } catch ( RuntimeException ex ) {
+            probe.failed( ex );
+            throw ex;
+        }
+    }
+
+    /**
+     * Select entities from a given SQL query filtered by a set of values. A "column in (...)" condition is appended to
+     * the query (see {@link SQLQueryBuilder#appendIn(String, Collection)}), so the query must end with "where" or
+     * "and". More than {@value SQLQueryBuilder#MAX_IN_PARAMS} distinct values are split into several executions whose
+     * results are concatenated, so the query should not sort, group or limit the entities. Above the threshold given
+     * to {@link #setTempTableThreshold(int, String)}, the distinct values are inserted in a temporary table using JDBC
+     * batches and the query is filtered by a sub-query on this table. The temporary table is emptied once the entities
+     * have been read and kept by the connection for the next calls (a table cannot be dropped by SQLite while a
+     * statement reads another table, as a nested call would do). The modifications of the temporary table do not
+     * invalidate the query cache.
+     *
+     * @param <T>    The entity type to return
+     * @param mapper The mapper used to build Java entities
+     * @param query  The query to select entities, which is not modified
+     * @param column The column (or expression) to compare with the values
+     * @param values The values
+     * @return The entities found
+     * @throws SQLFaultException Query error
+     */
+    public <T> List<T> queryIn( SQLRecordMapper<T> mapper, SQLQueryBuilder query, String column, Collection<?> values )
+            throws SQLFaultException
+    {
+        if ( values.size() <= SQLQueryBuilder.MAX_IN_PARAMS && values.size() <= tempTableThreshold ) {
+            return query( mapper, new SQLQueryBuilder().append( query ).appendIn( column, values ) );
+        }
+
+        List<Object> distinct = new ArrayList<>( new LinkedHashSet<>( values ) );
+        if ( distinct.size() <= tempTableThreshold ) {
+            List<T> entities = new ArrayList<>();
+            for ( int from = 0; from < distinct.size(); from += SQLQueryBuilder.MAX_IN_PARAMS ) {
+                List<Object> chunk = distinct.subList( from, Math.min( distinct.size(), from + SQLQueryBuilder.MAX_IN_PARAMS ) );
+                entities.addAll( query( mapper, new SQLQueryBuilder().append( query ).appendIn( column, chunk ) ) );
+            }
+            return entities;
+        }
+
+        List<Object[]> rows = new ArrayList<>( distinct.size() );
+        for ( Object value : distinct ) {
+            rows.add( new Object[]{ value } );
+        }
+
+        // Nested calls (from a mapper for instance) use another table
+        int[] depth = KEYS_TABLE_DEPTH.get();
+        String table = KEYS_TABLE + "_" + tempTableKeyType.replaceAll( "\\W+", "_" ).toUpperCase( Locale.ROOT ) + "_" + depth[ 0 ]++;
+        try {
+            executeUncached( "create temporary table if not exists " + table + " (K " + tempTableKeyType + " primary key)" );
+            executeUncached( "delete from " + table );
+            List<T> entities;
+            try {
+                executeBatch( "insert into " + table + " (K) values (?)", rows );
+                entities = query( mapper, new SQLQueryBuilder().append( query )
+                        .append( column + " in (select K from " + table + ")" ) );
+
+            } catch ( RuntimeException ex ) {
+                try {
+                    executeUncached( "delete from " + table );
+                } catch ( SQLFaultException deleteEx ) {
+                    ex.addSuppressed( deleteEx );
+                }
+                throw ex;
+            }
+            executeUncached( "delete from " + table );
+            return entities;
+
+        } finally {
+            depth[ 0 ]--;
         }
     }
 
@@ -88,16 +281,29 @@ public class SQLRunner
     public <T> T querySingle( SQLRecordMapper<T> mapper, SQLQueryBuilder query )
             throws SQLFaultException
     {
-        try ( PreparedStatement st = prepareStatement( query, false ) ) {
+        SQLProbe probe = SQLProbe.start( query );
+        try {
+            PreparedStatement st = prepareStatement( query, false );
+            probe.prepared();
             try ( ResultSet rs = st.executeQuery() ) {
+                probe.executed();
+                T entity = null;
                 if ( rs.next() ) {
-                    return mapper.buildEntity( new SQLRecord( rs ) );
+                    entity = mapper.buildEntity( new SQLRecord( rs, new SQLColumnIndexes( rs ) ) );
                 }
-                return null;
+                probe.completed( entity == null ? 0 : 1 );
+                return entity;
+
+            } finally {
+                closeStatement( st );
             }
 
         } catch ( SQLException ex ) {
+            probe.failed( ex );
             throw new SQLFaultException( "Error executing SQL query", ex );
+        } catch ( RuntimeException ex ) {
+            probe.failed( ex );
+            throw ex;
         }
     }
 
@@ -118,16 +324,29 @@ public class SQLRunner
                                              boolean updatable,
                                              SQLQueryBuilder query )
     {
+        SQLProbe probe = SQLProbe.start( query );
         try {
             PreparedStatement st = prepareStatement( query, updatable );
-            if ( fetchSize != null ) {
-                st.setFetchSize( fetchSize );
+            probe.prepared();
+            try {
+                if ( fetchSize != null ) {
+                    st.setFetchSize( fetchSize );
+                }
+                ResultSet rs = st.executeQuery();
+                probe.executed();
+                return new SQLIterator<>( rs, st, mapper, this, probe );
+
+            } catch ( SQLException ex ) {
+                closeStatement( st );
+                throw ex;
             }
-            ResultSet rs = st.executeQuery();
-            return new SQLIterator<>( rs, st, mapper );
 
         } catch ( SQLException ex ) {
+            probe.failed( ex );
             throw new SQLFaultException( "Error executing SQL query", ex );
+        } catch ( RuntimeException ex ) {
+            probe.failed( ex );
+            throw ex;
         }
     }
 
@@ -149,6 +368,30 @@ public class SQLRunner
         return StreamSupport.stream( spliterator, false ).onClose( iterator::close );
     }
 
+    /**
+     * Select entities from a given SQL query using keyset pagination. The query is executed once per page, ordered by
+     * the key column and starting after the last key of the previous page, so the cost of a page does not grow with
+     * its position like with LIMIT/OFFSET.
+     *
+     * @param <T>       The entities type
+     * @param mapper    The mapper used to build Java entities
+     * @param query     The query to select the entities. It must not contain "order by" or "limit" clauses.
+     * @param keyColumn The unique and not null column used to order the entities. It must be an unqualified column of
+     *                  the query result (aliased if needed).
+     * @param pageSize  The number of entities selected per page
+     * @param lastKey   The key to resume the iteration from (excluded), or null to start from the first entity
+     * @return The iterator handling the entities
+     * @see SQLKeysetIterator#getLastKey()
+     */
+    public <T> SQLKeysetIterator<T> queryByKeyset( SQLRecordMapper<T> mapper,
+                                                   SQLQueryBuilder query,
+                                                   String keyColumn,
+                                                   int pageSize,
+                                                   Object lastKey )
+    {
+        return new SQLKeysetIterator<>( this, mapper, query, keyColumn, pageSize, lastKey );
+    }
+
     /**
      * Execute a "count" query
      *
@@ -159,16 +402,26 @@ public class SQLRunner
     public long count( SQLQueryBuilder query )
             throws SQLFaultException
     {
-        try ( PreparedStatement st = prepareStatement( query, false ) ) {
+        SQLProbe probe = SQLProbe.start( query );
+        try {
+            PreparedStatement st = prepareStatement( query, false );
+            probe.prepared();
             try ( ResultSet rs = st.executeQuery() ) {
-                if ( rs.next() ) {
-                    return rs.getLong( 1 );
-                }
-                return 0;
+                probe.executed();
+                long count = rs.next() ? rs.getLong( 1 ) : 0;
+                probe.completed( 1 );
+                return count;
+
+            } finally {
+                closeStatement( st );
             }
 
         } catch ( SQLException ex ) {
+            probe.failed( ex );
             throw new SQLFaultException( "Error executing SQL query", ex );
+        } catch ( RuntimeException ex ) {
+            probe.failed( ex );
+            throw ex;
         }
     }
 
@@ -182,36 +435,356 @@ public class SQLRunner
     public int execute( SQLQueryBuilder query )
             throws SQLFaultException
     {
-        try ( PreparedStatement st = prepareStatement( query, false ) ) {
-            return st.executeUpdate();
+        SQLProbe probe = SQLProbe.start( query );
+        try {
+            PreparedStatement st = prepareStatement( query, false );
+            probe.prepared();
+            try {
+                int count = st.executeUpdate();
+                probe.executed();
+                tableWritten( query.getSQL() );
+                probe.completed( count );
+                return count;
+            } finally {
+                closeStatement( st );
+            }
+
+        } catch ( SQLException ex ) {
+            probe.failed( ex );
+            throw new SQLFaultException( "Error executing SQL query", ex );
+        } catch ( RuntimeException ex ) {
+            probe.failed( ex );
+            throw ex;
+        }
+    }
+
+    /**
+     * Execute the same query for UPDATE, INSERT or DELETE once per parameters row, using JDBC batches. A single
+     * statement is prepared and the rows are sent to the database every <code>batchSize</code> rows, which avoids one
+     * network round trip per row.
+     *
+     * @param query     The query to execute. It must contain the parameters placeholders used by each row.
+     * @param rows      The parameters rows
+     * @param batchSize The number of rows sent to the database at once
+     * @return The update counts of each executed batch
+     * @throws SQLFaultException Query error
+     */
+    public List<int[]> executeBatch( String query, Iterable<Object[]> rows, int batchSize )
+            throws SQLFaultException
+    {
+        if ( batchSize <= 0 ) {
+            throw new IllegalArgumentException( "Invalid batch size: " + batchSize );
+        }
+
+        SQLProbe probe = SQLProbe.start( query );
+        try {
+            PreparedStatement st = prepareStatement( query, false, false );
+            probe.prepared();
+            try {
+                List<int[]> counts = new ArrayList<>();
+                int pending = 0;
+                int parameterCount = 0;
+                for ( Object[] row : rows ) {
+                    for ( int i = 0; i < row.length; i++ ) {
+                        binders.bind( st, i + 1, row[ i ] );
+                    }
+                    parameterCount += row.length;
+                    st.addBatch();
+                    if ( ++pending == batchSize ) {
+                        counts.add( st.executeBatch() );
+                        pending = 0;
+                    }
+                }
+                if ( pending > 0 ) {
+                    counts.add( st.executeBatch() );
+                }
+                probe.executed();
+                tableWritten( query );
+                probe.completed( sum( counts ), parameterCount );
+                return counts;
+
+            } finally {
+                closeStatement( st );
+            }
+
+        } catch ( SQLException ex ) {
+            probe.failed( ex );
+            throw new SQLFaultException( "Error executing SQL batch", ex );
+        } catch ( RuntimeException ex ) {
+            probe.failed( ex );
+            throw ex;
+        }
+    }
+
+    /**
+     * Execute the same query for UPDATE, INSERT or DELETE once per parameters row, using JDBC batches of
+     * {@value #DEFAULT_BATCH_SIZE} rows.
+     *
+     * @param query The query to execute. It must contain the parameters placeholders used by each row.
+     * @param rows  The parameters rows
+     * @return The update counts of each executed batch
+     * @throws SQLFaultException Query error
+     * @see #executeBatch(String, Iterable, int)
+     */
+    public List<int[]> executeBatch( String query, Iterable<Object[]> rows )
+            throws SQLFaultException
+    {
+        return executeBatch( query, rows, DEFAULT_BATCH_SIZE );
+    }
+
+    /**
+     * Execute an INSERT query and get the keys generated by the database
+     *
+     * @param <K>    The keys type
+     * @param mapper The mapper used to build the keys from the generated keys records
+     * @param query  The query to execute
+     * @return The generated keys
+     * @throws SQLFaultException Query error
+     */
+    public <K> List<K> executeReturningKeys( SQLRecordMapper<K> mapper, SQLQueryBuilder query )
+            throws SQLFaultException
+    {
+        SQLProbe probe = SQLProbe.start( query );
+        try {
+            PreparedStatement st = prepareStatement( query, false, true );
+            probe.prepared();
+            try {
+                int count = st.executeUpdate();
+                probe.executed();
+                tableWritten( query.getSQL() );
+                List<K> keys = new ArrayList<>( 1 );
+                readKeys( st, mapper, keys );
+                probe.completed( count );
+                return keys;
+
+            } finally {
+                closeStatement( st );
+            }
+
+        } catch ( SQLException ex ) {
+            probe.failed( ex );
+            throw new SQLFaultException( "Error executing SQL query", ex );
+        } catch ( RuntimeException ex ) {
+            probe.failed( ex );
+            throw ex;
+        }
+    }
+
+    /**
+     * Execute the same INSERT query once per parameters row, using JDBC batches, and get the keys generated by the
+     * database. Some drivers only return the keys of the last inserted row of each batch.
+     *
+     * @param <K>       The keys type
+     * @param mapper    The mapper used to build the keys from the generated keys records
+     * @param query     The query to execute. It must contain the parameters placeholders used by each row.
+     * @param rows      The parameters rows
+     * @param batchSize The number of rows sent to the database at once
+     * @return The generated keys
+     * @throws SQLFaultException Query error
+     * @see #executeBatch(String, Iterable, int)
+     */
+    public <K> List<K> executeBatchReturningKeys( SQLRecordMapper<K> mapper,
+                                                  String query,
+                                                  Iterable<Object[]> rows,
+                                                  int batchSize )
+            throws SQLFaultException
+    {
+        if ( batchSize <= 0 ) {
+            throw new IllegalArgumentException( "Invalid batch size: " + batchSize );
+        }
+
+        SQLProbe probe = SQLProbe.start( query );
+        try {
+            PreparedStatement st = prepareStatement( query, false, true );
+            probe.prepared();
+            try {
+                List<K> keys = new ArrayList<>();
+                int pending = 0;
+                int parameterCount = 0;
+                long count = 0;
+                for ( Object[] row : rows ) {
+                    for ( int i = 0; i < row.length; i++ ) {
+                        binders.bind( st, i + 1, row[ i ] );
+                    }
+                    parameterCount += row.length;
+                    st.addBatch();
+                    if ( ++pending == batchSize ) {
+                        count += sum( st.executeBatch() );
+                        readKeys( st, mapper, keys );
+                        pending = 0;
+                    }
+                }
+                if ( pending > 0 ) {
+                    count += sum( st.executeBatch() );
+                    readKeys( st, mapper, keys );
+                }
+                probe.executed();
+                tableWritten( query );
+                probe.completed( count, parameterCount );
+                return keys;
+
+            } finally {
+                closeStatement( st );
+            }
+
+        } catch ( SQLException ex ) {
+            probe.failed( ex );
+            throw new SQLFaultException( "Error executing SQL batch", ex );
+        } catch ( RuntimeException ex ) {
+            probe.failed( ex );
+            throw ex;
+        }
+    }
+
+    /**
+     * Execute a statement without parameters and without using the statements cache (for DDL statements)
+     */
+    private void executeUncached( String query )
+            throws SQLFaultException
+    {
+        SQLProbe probe = SQLProbe.start( query );
+        try {
+            Connection connection = source == null ? conn : source.getConnection();
+            try ( Statement st = connection.createStatement() ) {
+                probe.prepared();
+                st.execute( query );
+                probe.executed();
+                probe.completed( 0 );
+            }
 
         } catch ( SQLException ex ) {
+            probe.failed( ex );
             throw new SQLFaultException( "Error executing SQL query", ex );
+        } catch ( RuntimeException ex ) {
+            probe.failed( ex );
+            throw ex;
         }
     }
 
     private PreparedStatement prepareStatement( SQLQueryBuilder query, boolean updatable )
             throws SQLException
     {
-        PreparedStatement st = conn.prepareStatement( query.query.toString(),
-                                                      ResultSet.TYPE_FORWARD_ONLY,
-                                                      updatable ? ResultSet.CONCUR_UPDATABLE : ResultSet.CONCUR_READ_ONLY );
-        int index = 1;
-        for ( Object obj : query.params ) {
-            if ( obj instanceof LocalDate ) {
-                st.setDate( index, Date.valueOf( ( LocalDate ) obj ) );
-            } else if ( obj instanceof Instant ) {
-                st.setTimestamp( index, Timestamp.from( ( Instant ) obj ) );
-            } else if ( obj instanceof LocalTime ) {
-                st.setTime( index, Time.valueOf( ( LocalTime ) obj ) );
-            } else if ( obj instanceof SQLObject ) {
-                st.setObject( index, ( ( SQLObject ) obj ).toSQLObject( conn ) );
-            } else {
-                st.setObject( index, obj );
-            }
-            index++;
+        return prepareStatement( query, updatable, false );
+    }
+
+    private PreparedStatement prepareStatement( SQLQueryBuilder query, boolean updatable, boolean keys )
+            throws SQLException
+    {
+        PreparedStatement st = prepareStatement( query.getSQL(), updatable, keys );
+        int count = query.getParamsCount();
+        for ( int i = 0; i < count; i++ ) {
+            binders.bind( st, i + 1, query.getParam( i ) );
         }
         return st;
     }
 
+    private PreparedStatement prepareStatement( String query, boolean updatable, boolean keys )
+            throws SQLException
+    {
+        int concurrency = updatable ? ResultSet.CONCUR_UPDATABLE : ResultSet.CONCUR_READ_ONLY;
+        // The transaction connection is acquired when the first statement is prepared
+        Connection connection = source == null ? conn : source.getConnection();
+        SQLStatementCache cache = getStatementCache();
+        if ( cache != null ) {
+            return cache.prepare( connection, query, ResultSet.TYPE_FORWARD_ONLY, concurrency, keys );
+        }
+        if ( keys ) {
+            return connection.prepareStatement( query, Statement.RETURN_GENERATED_KEYS );
+        }
+        return connection.prepareStatement( query, ResultSet.TYPE_FORWARD_ONLY, concurrency );
+    }
+
+    private static long sum( List<int[]> counts )
+    {
+        long sum = 0;
+        for ( int[] batch : counts ) {
+            sum += sum( batch );
+        }
+        return sum;
+    }
+
+    private static long sum( int[] counts )
+    {
+        // Some drivers return SUCCESS_NO_INFO (-2) instead of the rows count
+        long sum = 0;
+        for ( int count : counts ) {
+            if ( count > 0 ) {
+                sum += count;
+            }
+        }
+        return sum;
+    }
+
+    private static <K> void readKeys( PreparedStatement st, SQLRecordMapper<K> mapper, List<K> keys )
+            throws SQLException
+    {
+        try ( ResultSet rs = st.getGeneratedKeys() ) {
+            SQLRecord record = new SQLRecord( rs, new SQLColumnIndexes( rs ) );
+            while ( rs.next() ) {
+                keys.add( mapper.buildEntity( record ) );
+            }
+        }
+    }
+
+    /**
+     * Close a statement created by this runner, or give it back to the statements cache
+     *
+     * @param st The statement
+     * @throws SQLException Error closing the statement
+     */
+    void closeStatement( PreparedStatement st )
+            throws SQLException
+    {
+        SQLStatementCache cache = getStatementCache();
+        if ( cache != null ) {
+            cache.release( st );
+        } else {
+            st.close();
+        }
+    }
+
+    private void tableWritten( String query )
+    {
+        SQLQueryCache cache = queryCache;
+        if ( cache == null ) {
+            return;
+        }
+
+        String table = SQLStatements.getWrittenTable( query );
+        if ( table != null && table.startsWith( KEYS_TABLE ) ) {
+            // The temporary keys tables of queryIn are private to the connection
+            return;
+        }
+        invalidate( cache, table );
+        SQLTransaction tx = getTransaction();
+        if ( tx != null ) {
+            tx.tableWritten( table );
+            tx.afterCommit( new AbstractMap.SimpleImmutableEntry<>( cache, table ), () -> invalidate( cache, table ) );
+        }
+    }
+
+    private static void invalidate( SQLQueryCache cache, String table )
+    {
+        if ( table == null ) {
+            cache.invalidateAll();
+        } else {
+            cache.invalidate( table );
+        }
+    }
+
+    /**
+     * Get the transaction used by this runner
+     *
+     * @return The transaction, or null if this runner does not use a {@link SQLTransaction}
+     */
+    SQLTransaction getTransaction()
+    {
+        return source instanceof SQLTransaction ? ( SQLTransaction ) source : null;
+    }
+
+    private SQLStatementCache getStatementCache()
+    {
+        return source == null ? null : source.getStatementCache();
+    }
+
 }
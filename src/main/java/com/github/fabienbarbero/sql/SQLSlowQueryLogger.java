@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link SQLListener} logging the statements and the transactions slower than a threshold. The statements are
+ * logged with their SQL text, duration, rows count and parameters. For an iterator, the duration includes the time
+ * elapsed until the iterator is closed.
+ * <p>
+ * The parameters values are redacted by default, see {@link #setParameterFormatter(Function)}. The number of logged
+ * messages is limited by a token bucket, so a slow database cannot flood the logs: the skipped messages are counted
+ * and reported by the next logged message.
+ *
+ * @author Fabien Barbero
+ */
+public class SQLSlowQueryLogger
+        implements SQLListener
+{
+
+    /**
+     * Formatter hiding the parameters values
+     */
+    public static final Function<Object, String> REDACTED = value -> value == null ? "null" : "***";
+
+    /**
+     * Formatter showing the parameters values (truncated to 100 characters)
+     */
+    public static final Function<Object, String> PLAIN = value -> {
+        String text = String.valueOf( value );
+        return text.length() > 100 ? text.substring( 0, 100 ) + "..." : text;
+    };
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( SQLSlowQueryLogger.class );
+
+    private final long thresholdNanos;
+    private long transactionThresholdNanos;
+    private Function<Object, String> parameterFormatter = REDACTED;
+    private double permitsPerNano;
+    private double maxPermits;
+    private double permits;
+    private long lastRefill = System.nanoTime();
+    private long skipped;
+    private final LongAdder slowCount = new LongAdder();
+    private final LongAdder skippedCount = new LongAdder();
+
+    /**
+     * Create a new logger. At most 10 messages are logged per second.
+     *
+     * @param threshold The duration above which the statements and the transactions are logged
+     * @param unit      The threshold unit
+     */
+    public SQLSlowQueryLogger( long threshold, TimeUnit unit )
+    {
+        this.thresholdNanos = unit.toNanos( threshold );
+        this.transactionThresholdNanos = thresholdNanos;
+        setMaxMessagesPerSecond( 10 );
+    }
+
+    /**
+     * Set the duration above which the transactions are logged. By default, the statements threshold is used.
+     *
+     * @param threshold The transactions threshold
+     * @param unit      The threshold unit
+     */
+    public void setTransactionThreshold( long threshold, TimeUnit unit )
+    {
+        this.transactionThresholdNanos = unit.toNanos( threshold );
+    }
+
+    /**
+     * Set the function used to log the parameters values
+     *
+     * @param parameterFormatter The formatter, for instance {@link #REDACTED} or {@link #PLAIN}
+     */
+    public void setParameterFormatter( Function<Object, String> parameterFormatter )
+    {
+        this.parameterFormatter = parameterFormatter;
+    }
+
+    /**
+     * Set the maximum number of messages logged per second
+     *
+     * @param maxMessagesPerSecond The maximum messages rate
+     */
+    public synchronized void setMaxMessagesPerSecond( double maxMessagesPerSecond )
+    {
+        if ( maxMessagesPerSecond <= 0 ) {
+            throw new IllegalArgumentException( "Invalid messages rate: " + maxMessagesPerSecond );
+        }
+        this.permitsPerNano = maxMessagesPerSecond / TimeUnit.SECONDS.toNanos( 1 );
+        this.maxPermits = Math.max( 1, maxMessagesPerSecond );
+        this.permits = maxPermits;
+    }
+
+    /**
+     * Get the number of slow statements and transactions, including the ones which have not been logged
+     *
+     * @return The slow statements and transactions count
+     */
+    public long getSlowCount()
+    {
+        return slowCount.sum();
+    }
+
+    /**
+     * Get the number of slow statements and transactions which have not been logged because of the rate limit
+     *
+     * @return The skipped messages count
+     */
+    public long getSkippedCount()
+    {
+        return skippedCount.sum();
+    }
+
+    @Override
+    public void statementExecuted( SQLExecution execution )
+    {
+        if ( execution.getTotalNanos() < thresholdNanos || !LOGGER.isWarnEnabled() ) {
+            return;
+        }
+        slowCount.increment();
+        long skippedCount = acquire();
+        if ( skippedCount < 0 ) {
+            return;
+        }
+
+        LOGGER.warn( "Slow SQL statement: {} ms (prepare {} ms, execute {} ms, fetch {} ms), {} rows{}, parameters {}: {}{}",
+                     millis( execution.getTotalNanos() ),
+                     millis( execution.getPrepareNanos() ),
+                     millis( execution.getExecuteNanos() ),
+                     millis( execution.getFetchNanos() ),
+                     execution.getRows(),
+                     execution.getError() == null ? "" : ", failed",
+                     formatParameters( execution ),
+                     execution.getSQL(),
+                     skipped( skippedCount ) );
+    }
+
+    @Override
+    public void transactionCompleted( boolean committed, long elapsedNanos, Throwable error )
+    {
+        if ( elapsedNanos < transactionThresholdNanos || !LOGGER.isWarnEnabled() ) {
+            return;
+        }
+        slowCount.increment();
+        long skippedCount = acquire();
+        if ( skippedCount < 0 ) {
+            return;
+        }
+
+        LOGGER.warn( "Slow SQL transaction: {} ms, {}{}",
+                     millis( elapsedNanos ),
+                     committed ? "committed" : "rolled back",
+                     skipped( skippedCount ) );
+    }
+
+    /**
+     * Take a token from the bucket
+     *
+     * @return The number of messages skipped since the last logged one, or -1 if the message must be skipped
+     */
+    private synchronized long acquire()
+    {
+        long now = System.nanoTime();
+        permits = Math.min( maxPermits, permits + ( now - lastRefill ) * permitsPerNano );
+        lastRefill = now;
+        if ( permits < 1 ) {
+            skipped++;
+            skippedCount.increment();
+            return -1;
+        }
+        permits--;
+        long count = skipped;
+        skipped = 0;
+        return count;
+    }
+
+    private String formatParameters( SQLExecution execution )
+    {
+        List<Object> parameters = execution.getParameters();
+        if ( parameters.isEmpty() ) {
+            return "(" + execution.getParameterCount() + ")";
+        }
+        StringBuilder sb = new StringBuilder( "[" );
+        for ( int i = 0; i < parameters.size(); i++ ) {
+            if ( i > 0 ) {
+                sb.append( ", " );
+            }
+            sb.append( parameterFormatter.apply( parameters.get( i ) ) );
+        }
+        return sb.append( "]" ).toString();
+    }
+
+    private static String millis( long nanos )
+    {
+        return String.format( Locale.ROOT, "%.1f", nanos / 1e6 );
+    }
+
+    private static String skipped( long count )
+    {
+        return count == 0 ? "" : " (" + count + " slow statements or transactions not logged)";
+    }
+
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A bounded LRU cache of prepared statements bound to a single connection. The statements are keyed by their SQL query,
+ * result set type and concurrency, and generated keys mode. When a statement is released its parameters and batch are
+ * cleared and it is kept open to be reused by the next identical query. The least recently used statements are closed
+ * when the cache is full.
+ * <p>
+ * The cache is not thread-safe, like the connection it belongs to.
+ *
+ * @author Fabien Barbero
+ * @see SQLTransaction#enableStatementCache(int)
+ */
+public class SQLStatementCache
+        implements AutoCloseable
+{
+
+    private final int maxSize;
+    private final LinkedHashMap<Key, PreparedStatement> idle;
+    private final Map<PreparedStatement, Key> inUse = new IdentityHashMap<>();
+    private long hits;
+    private long misses;
+    private long evictions;
+    private boolean closed;
+
+    /**
+     * Create a new cache
+     *
+     * @param maxSize The maximum number of idle statements kept open
+     */
+    public SQLStatementCache( int maxSize )
+    {
+        if ( maxSize <= 0 ) {
+            throw new IllegalArgumentException( "Invalid cache size: " + maxSize );
+        }
+        this.maxSize = maxSize;
+        this.idle = new LinkedHashMap<>( 16, 0.75f, true );
+    }
+
+    /**
+     * Get a prepared statement from the cache, or prepare a new one if none is available. The statement must be given
+     * back using {@link #release(PreparedStatement)}.
+     *
+     * @param conn        The connection used to prepare the statement when it is not cached
+     * @param query       The SQL query
+     * @param type        The result set type
+     * @param concurrency The result set concurrency
+     * @param keys        true to return the generated keys
+     * @return The prepared statement
+     * @throws SQLException If the statement cannot be prepared
+     */
+    PreparedStatement prepare( Connection conn, String query, int type, int concurrency, boolean keys )
+            throws SQLException
+    {
+        Key key = new Key( query, type, concurrency, keys );
+        PreparedStatement st = closed ? null : idle.remove( key );
+        if ( st != null ) {
+            hits++;
+        } else {
+            misses++;
+            st = keys ? conn.prepareStatement( query, Statement.RETURN_GENERATED_KEYS )
+                      : conn.prepareStatement( query, type, concurrency );
+        }
+        inUse.put( st, key );
+        return st;
+    }
+
+    /**
+     * Give back a statement obtained with {@link #prepare(Connection, String, int, int, boolean)}. The statement is closed if
+     * it cannot be kept in the cache.
+     *
+     * @param st The statement to release
+     * @throws SQLException If the statement cannot be reset or closed
+     */
+    void release( PreparedStatement st )
+            throws SQLException
+    {
+        Key key = inUse.remove( st );
+        if ( key == null || closed || idle.containsKey( key ) ) {
+            // Unknown statement, or the same query has been executed in a nested way
+            st.close();
+            return;
+        }
+
+        try {
+            st.clearParameters();
+            // A failed batch may leave rows which would be executed by the next batch
+            st.clearBatch();
+            if ( st.getFetchSize() != 0 ) {
+                st.setFetchSize( 0 );
+            }
+        } catch ( SQLException ex ) {
+            st.close();
+            throw ex;
+        }
+
+        idle.put( key, st );
+        if ( idle.size() > maxSize ) {
+            Iterator<PreparedStatement> it = idle.values().iterator();
+            PreparedStatement eldest = it.next();
+            it.remove();
+            evictions++;
+            eldest.close();
+        }
+    }
+
+    /**
+     * Get the number of statements which have been reused
+     *
+     * @return The hits count
+     */
+    public long getHitCount()
+    {
+        return hits;
+    }
+
+    /**
+     * Get the number of statements which have been prepared because they were not in the cache
+     *
+     * @return The misses count
+     */
+    public long getMissCount()
+    {
+        return misses;
+    }
+
+    /**
+     * Get the number of statements which have been closed because the cache was full
+     *
+     * @return The evictions count
+     */
+    public long getEvictionCount()
+    {
+        return evictions;
+    }
+
+    /**
+     * Get the number of idle statements currently kept open
+     *
+     * @return The cache size
+     */
+    public int size()
+    {
+        return idle.size();
+    }
+
+    /**
+     * Close all the cached statements. The statements released after this call are closed directly.
+     *
+     * @throws SQLFaultException If a statement cannot be closed
+     */
+    @Override
+    public void close()
+            throws SQLFaultException
+    {
+        closed = true;
+        SQLException error = null;
+        for ( PreparedStatement st : idle.values() ) {
+            try {
+                st.close();
+            } catch ( SQLException ex ) {
+                error = ex;
+            }
+        }
+        idle.clear();
+        if ( error != null ) {
+            throw new SQLFaultException( "Error closing cached statements", error );
+        }
+    }
+
+    private static final class Key
+    {
+
+        private final String query;
+        private final int type;
+        private final int concurrency;
+        private final boolean keys;
+
+        private Key( String query, int type, int concurrency, boolean keys )
+        {
+            this.query = query;
+            this.type = type;
+            this.concurrency = concurrency;
+            this.keys = keys;
+        }
+
+        @Override
+        public boolean equals( Object obj )
+        {
+            if ( obj instanceof Key ) {
+                Key key = ( Key ) obj;
+                return type == key.type && concurrency == key.concurrency && keys == key.keys
+                       && query.equals( key.query );
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash( query, type, concurrency, keys );
+        }
+    }
+
+}
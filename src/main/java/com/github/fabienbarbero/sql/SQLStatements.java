@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Utility methods to analyze SQL statements
+ *
+ * @author Fabien Barbero
+ */
+final class SQLStatements
+{
+
+    private static final Pattern WRITE_PATTERN = Pattern.compile(
+            "^\\s*(?:insert\\s+(?:or\\s+\\w+\\s+)?into|replace\\s+into|merge\\s+into|update(?:\\s+or\\s+\\w+)?|delete\\s+from"
+            + "|truncate(?:\\s+table)?|drop\\s+table(?:\\s+if\\s+exists)?|alter\\s+table"
+            + "|create\\s+(?:(?:global\\s+|local\\s+)?temp(?:orary)?\\s+)?table(?:\\s+if\\s+not\\s+exists)?)"
+            + "\\s+([\\w.\"`\\[\\]]+)",
+            Pattern.CASE_INSENSITIVE );
+
+    private SQLStatements()
+    {
+    }
+
+    /**
+     * Get the table modified by a statement
+     *
+     * @param sql The SQL statement
+     * @return The upper-case table name (without schema), or null if the table cannot be found
+     */
+    static String getWrittenTable( String sql )
+    {
+        Matcher matcher = WRITE_PATTERN.matcher( sql );
+        if ( !matcher.find() ) {
+            return null;
+        }
+        return normalizeTable( matcher.group( 1 ) );
+    }
+
+    /**
+     * Normalize a table name: the quotes and the schema are removed and the name is converted to upper-case
+     *
+     * @param table The table name
+     * @return The normalized name
+     */
+    static String normalizeTable( String table )
+    {
+        String name = table.substring( table.lastIndexOf( '.' ) + 1 );
+        return name.replaceAll( "[\"`\\[\\]]", "" ).toUpperCase( Locale.ROOT );
+    }
+
+}
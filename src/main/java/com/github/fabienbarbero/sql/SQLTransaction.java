@@ -20,9 +20,15 @@ package com.github.fabienbarbero.sql;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 import javax.sql.DataSource;
 
 /**
+ * A SQL transaction. When the transaction is created from a data source, the connection is only acquired when it is
+ * first used, so a transaction which does not execute any statement does not use a connection.
  *
  * @author Fabien Barbero
  */
@@ -30,6 +36,8 @@ public class SQLTransaction
         implements AutoCloseable, HasSQLConnection
 {
 
+    private static final String ALL_TABLES = "*";
+
     /**
      * Begin a new SQL transaction in R/W mode and default isolation level
      *
@@ -38,11 +46,7 @@ public class SQLTransaction
      */
     public static SQLTransaction begin( DataSource ds )
     {
-        try {
-            return begin( ds.getConnection(), false, null );
-        } catch ( SQLException ex ) {
-            throw new SQLFaultException( "Error begenning SQL transaction", ex );
-        }
+        return begin( ds, false, null );
     }
 
     /**
@@ -55,11 +59,7 @@ public class SQLTransaction
      */
     public static SQLTransaction begin( DataSource ds, boolean readOnly, IsolationLevel level )
     {
-        try {
-            return begin( ds.getConnection(), readOnly, level );
-        } catch ( SQLException ex ) {
-            throw new SQLFaultException( "Error begenning SQL transaction", ex );
-        }
+        return new SQLTransaction( ds, null, readOnly, level );
     }
 
     /**
@@ -84,23 +84,75 @@ public class SQLTransaction
     public static SQLTransaction begin( Connection conn, boolean readOnly, IsolationLevel level )
     {
         try {
-            conn.setAutoCommit( false );
-            conn.setReadOnly( readOnly );
-            if ( level != null ) {
-                conn.setTransactionIsolation( level.value );
-            }
-            return new SQLTransaction( conn );
+            SQLTransaction tx = new SQLTransaction( null, conn, readOnly, level );
+            tx.initialState = configure( conn, readOnly, level );
+            tx.startNanos = System.nanoTime();
+            return tx;
 
         } catch ( SQLException ex ) {
             throw new SQLFaultException( "Error begenning SQL transaction", ex );
         }
     }
 
-    private final Connection conn;
+    /**
+     * Configure a connection for a transaction. The current settings are read once, so only the ones which differ are
+     * changed.
+     *
+     * @param conn     The connection
+     * @param readOnly Indicates if the connection must be read-only
+     * @param level    The isolation level, or null to keep the current one
+     * @return The settings of the connection before it was configured
+     * @throws SQLException Error configuring the connection
+     */
+    static ConnectionState configure( Connection conn, boolean readOnly, IsolationLevel level )
+            throws SQLException
+    {
+        boolean autoCommit = conn.getAutoCommit();
+        if ( autoCommit ) {
+            conn.setAutoCommit( false );
+        }
+        boolean wasReadOnly = conn.isReadOnly();
+        if ( wasReadOnly != readOnly ) {
+            conn.setReadOnly( readOnly );
+        }
+        if ( level != null ) {
+            conn.setTransactionIsolation( level.value );
+        }
+        return new ConnectionState( autoCommit, wasReadOnly != readOnly ? wasReadOnly : null );
+    }
+
+    private final DataSource ds;
+    private final boolean readOnly;
+    private final IsolationLevel level;
+    private Connection conn;
+    private SQLStatementCache statementCache;
+    private Set<String> writtenTables;
+    private Map<Object, Runnable> commitActions;
+    private ConnectionState initialState;
+    private boolean pending;
+    private long startNanos;
 
-    private SQLTransaction( Connection conn )
+    private SQLTransaction( DataSource ds, Connection conn, boolean readOnly, IsolationLevel level )
     {
+        this.ds = ds;
         this.conn = conn;
+        this.readOnly = readOnly;
+        this.level = level;
+    }
+
+    /**
+     * Enable the prepared statements cache for this transaction. The statements executed by the {@link SQLRunner}
+     * using this transaction are kept open and reused until the transaction is closed.
+     *
+     * @param maxSize The maximum number of statements kept open
+     * @return The statements cache
+     */
+    public SQLStatementCache enableStatementCache( int maxSize )
+    {
+        if ( statementCache == null ) {
+            statementCache = new SQLStatementCache( maxSize );
+        }
+        return statementCache;
     }
 
     /**
@@ -112,7 +164,8 @@ public class SQLTransaction
     public SQLSavepoint createSavepoint( String name )
     {
         try {
-            return new SQLSavepoint( conn.setSavepoint( name ), conn );
+            Connection connection = getConnection();
+            return new SQLSavepoint( connection.setSavepoint( name ), connection );
         } catch ( SQLException ex ) {
             throw new SQLFaultException( "Error creating SQL savepoint", ex );
         }
@@ -127,10 +180,24 @@ public class SQLTransaction
             throws SQLFaultException
     {
         try {
-            conn.commit();
+            // A transaction which has not acquired a connection has nothing to report
+            if ( conn != null ) {
+                conn.commit();
+                pending = false;
+                SQLListeners.transactionCompleted( true, startNanos, null );
+                startNanos = System.nanoTime();
+            }
         } catch ( SQLException ex ) {
+            SQLListeners.transactionCompleted( true, startNanos, ex );
             throw new SQLFaultException( "Error commiting SQL transaction", ex );
         }
+
+        Map<Object, Runnable> actions = commitActions;
+        writtenTables = null;
+        commitActions = null;
+        if ( actions != null ) {
+            actions.values().forEach( Runnable::run );
+        }
     }
 
     /**
@@ -142,10 +209,60 @@ public class SQLTransaction
             throws SQLFaultException
     {
         try {
-            conn.rollback();
+            if ( conn != null ) {
+                conn.rollback();
+                pending = false;
+                SQLListeners.transactionCompleted( false, startNanos, null );
+            }
         } catch ( SQLException ex ) {
+            SQLListeners.transactionCompleted( false, startNanos, ex );
             throw new SQLFaultException( "Error rollbacking transaction", ex );
+        } finally {
+            writtenTables = null;
+            commitActions = null;
+            startNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Register a table modified by the current transaction
+     *
+     * @param table The normalized table name, or null if unknown
+     * @see SQLStatements#normalizeTable(String)
+     */
+    void tableWritten( String table )
+    {
+        if ( writtenTables == null ) {
+            writtenTables = new HashSet<>();
+        }
+        writtenTables.add( table == null ? ALL_TABLES : table );
+    }
+
+    /**
+     * Indicates if a table has been modified by the current transaction (which is not committed yet)
+     *
+     * @param table The normalized table name, or null to check if an unknown table has been modified
+     * @return true if the table may have been modified
+     */
+    boolean isTableWritten( String table )
+    {
+        return writtenTables != null
+               && ( writtenTables.contains( ALL_TABLES ) || ( table != null && writtenTables.contains( table ) ) );
+    }
+
+    /**
+     * Register an action to execute once the current transaction is committed. The action is discarded if the
+     * transaction is rolled back. An action is registered only once per key.
+     *
+     * @param key    The key identifying the action
+     * @param action The action
+     */
+    void afterCommit( Object key, Runnable action )
+    {
+        if ( commitActions == null ) {
+            commitActions = new LinkedHashMap<>();
         }
+        commitActions.putIfAbsent( key, action );
     }
 
     @Override
@@ -153,21 +270,62 @@ public class SQLTransaction
             throws SQLFaultException
     {
         try {
-            if ( !conn.isClosed() ) {
-                conn.close();
+            if ( statementCache != null ) {
+                statementCache.close();
             }
 
-        } catch ( SQLException ex ) {
-            throw new SQLFaultException( "Error closing SQL transaction", ex );
+        } finally {
+            try {
+                if ( conn != null && !conn.isClosed() ) {
+                    try {
+                        initialState.restore( conn, pending );
+                    } finally {
+                        conn.close();
+                    }
+                }
+
+            } catch ( SQLException ex ) {
+                throw new SQLFaultException( "Error closing SQL transaction", ex );
+            }
         }
     }
 
+    /**
+     * Get the connection used by the transaction, acquiring it if needed
+     *
+     * @return The connection
+     * @throws SQLFaultException Error acquiring the connection
+     */
     @Override
     public Connection getConnection()
+            throws SQLFaultException
     {
+        if ( conn == null ) {
+            try {
+                Connection connection = ds.getConnection();
+                try {
+                    initialState = configure( connection, readOnly, level );
+                } catch ( SQLException ex ) {
+                    connection.close();
+                    throw ex;
+                }
+                conn = connection;
+                startNanos = System.nanoTime();
+
+            } catch ( SQLException ex ) {
+                throw new SQLFaultException( "Error begenning SQL transaction", ex );
+            }
+        }
+        pending = true;
         return conn;
     }
 
+    @Override
+    public SQLStatementCache getStatementCache()
+    {
+        return statementCache;
+    }
+
     public enum IsolationLevel
     {
 
@@ -210,4 +368,42 @@ public class SQLTransaction
 
     }
 
+    /**
+     * The settings of a connection before it was configured
+     */
+    static final class ConnectionState
+    {
+
+        private final boolean autoCommit;
+        private final Boolean readOnly;
+
+        private ConnectionState( boolean autoCommit, Boolean readOnly )
+        {
+            this.autoCommit = autoCommit;
+            this.readOnly = readOnly;
+        }
+
+        /**
+         * Restore the settings of a connection. The pending changes are rolled back first, since enabling the
+         * auto-commit mode would commit them.
+         *
+         * @param conn    The connection
+         * @param pending Indicates if the connection may have uncommitted changes
+         * @throws SQLException Error restoring the settings
+         */
+        void restore( Connection conn, boolean pending )
+                throws SQLException
+        {
+            if ( autoCommit ) {
+                if ( pending ) {
+                    conn.rollback();
+                }
+                conn.setAutoCommit( true );
+            }
+            if ( readOnly != null ) {
+                conn.setReadOnly( readOnly );
+            }
+        }
+    }
+
 }
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.sqlite.SQLiteDataSource;
+
+/**
+ *
+ * @author Fabien Barbero
+ */
+public class SQLAsyncRunnerTest
+{
+
+    private SQLiteDataSource ds;
+    private File tmpFile;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        tmpFile = File.createTempFile( "sqlite-", ".db" ).getCanonicalFile();
+
+        ds = new SQLiteDataSource();
+        ds.setEncoding( "UTF-8" );
+        ds.setUrl( "jdbc:sqlite:" + tmpFile );
+
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLRunner exec = new SQLRunner( tx );
+            exec.execute( new SQLQueryBuilder( "create table USERS ("
+                                               + "UUID char(36) primary key, "
+                                               + "NAME varchar(128) not null, "
+                                               + "EMAIL varchar(128) not null)" ) );
+            tx.commit();
+        }
+
+        executor = Executors.newFixedThreadPool( 8 );
+    }
+
+    @After
+    public void tearDown()
+            throws Exception
+    {
+        executor.shutdownNow();
+        tmpFile.delete();
+    }
+
+    @Test
+    public void testQueries()
+            throws Exception
+    {
+        SQLAsyncRunner runner = new SQLAsyncRunner( ds, executor, 2 );
+        User user = User.newInstance( "john doe", "john@doe.com" );
+        assertEquals( 1, ( int ) runner.execute( new SQLQueryBuilder( "insert into USERS (UUID, EMAIL, NAME) values (?,?,?)",
+                                                                      user.getUuid(), user.getEmail(), user.getName() ) ).get() );
+
+        CompletableFuture<Long> count = runner.count( new SQLQueryBuilder( "select count(*) from USERS" ) );
+        CompletableFuture<String> name = runner.querySingle( record -> record.getString( "NAME" ).get(),
+                                                             new SQLQueryBuilder( "select * from USERS where UUID=?", user.getUuid() ) );
+        CompletableFuture<List<String>> emails = runner.query( record -> record.getString( "EMAIL" ).get(),
+                                                               new SQLQueryBuilder( "select * from USERS" ) );
+        assertEquals( 1L, ( long ) count.get() );
+        assertEquals( "john doe", name.get() );
+        assertEquals( 1, emails.get().size() );
+
+        try {
+            runner.count( new SQLQueryBuilder( "select count(*) from UNKNOWN" ) ).get();
+            fail( "The query must fail" );
+        } catch ( ExecutionException ex ) {
+            assertTrue( ex.getCause() instanceof SQLFaultException );
+        }
+    }
+
+    @Test
+    public void testConcurrencyLimit()
+            throws Exception
+    {
+        SQLAsyncRunner runner = new SQLAsyncRunner( ds, executor, 2 );
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for ( int i = 0; i < 20; i++ ) {
+            futures.add( runner.submit( false, exec -> {
+                maxRunning.accumulateAndGet( running.incrementAndGet(), Math::max );
+                try {
+                    Thread.sleep( 5 );
+                    return exec.count( new SQLQueryBuilder( "select count(*) from USERS" ) );
+                } catch ( InterruptedException ex ) {
+                    throw new IllegalStateException( ex );
+                } finally {
+                    running.decrementAndGet();
+                }
+            } ) );
+        }
+        for ( CompletableFuture<Long> future : futures ) {
+            assertEquals( 0L, ( long ) future.get() );
+        }
+        assertTrue( maxRunning.get() <= 2 );
+        assertEquals( 0, runner.getQueuedCount() );
+    }
+
+}
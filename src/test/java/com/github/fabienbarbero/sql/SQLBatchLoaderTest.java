@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.sqlite.SQLiteDataSource;
+
+/**
+ *
+ * @author Fabien Barbero
+ */
+public class SQLBatchLoaderTest
+{
+
+    private SQLiteDataSource ds;
+    private File tmpFile;
+    private ScheduledExecutorService scheduler;
+
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        tmpFile = File.createTempFile( "sqlite-", ".db" ).getCanonicalFile();
+
+        ds = new SQLiteDataSource();
+        ds.setEncoding( "UTF-8" );
+        ds.setUrl( "jdbc:sqlite:" + tmpFile );
+
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLRunner exec = new SQLRunner( tx );
+            exec.execute( new SQLQueryBuilder( "create table USERS ("
+                                               + "UUID char(36) primary key, "
+                                               + "NAME varchar(128) not null, "
+                                               + "EMAIL varchar(128) not null)" ) );
+            for ( int i = 0; i < 5; i++ ) {
+                exec.execute( new SQLQueryBuilder( "insert into USERS (UUID, EMAIL, NAME) values (?,?,?)",
+                                                   String.valueOf( i ), "user" + i + "@doe.com", "user" + i ) );
+            }
+            tx.commit();
+        }
+
+        scheduler = Executors.newScheduledThreadPool( 2 );
+    }
+
+    @After
+    public void tearDown()
+            throws Exception
+    {
+        scheduler.shutdownNow();
+        tmpFile.delete();
+    }
+
+    @Test
+    public void testCoalescing()
+            throws Exception
+    {
+        SQLBatchLoader<User, String> loader = new SQLBatchLoader<>( ds, UserDAOImpl::new, scheduler, 1, TimeUnit.SECONDS, 4 );
+
+        CompletableFuture<User> user0 = loader.load( "0" );
+        CompletableFuture<User> user1 = loader.load( "1" );
+        assertSame( user0, loader.load( "0" ) );
+        loader.load( "2" );
+        CompletableFuture<User> unknown = loader.load( "unknown" );
+
+        // The batch is full and sent immediately
+        assertEquals( "user0", user0.get( 1, TimeUnit.SECONDS ).getName() );
+        assertEquals( "user1", user1.get( 1, TimeUnit.SECONDS ).getName() );
+        assertNull( unknown.get( 1, TimeUnit.SECONDS ) );
+        assertEquals( 1, loader.getBatchCount() );
+        assertEquals( 1, loader.getCoalescedCount() );
+        assertEquals( 5, loader.getLoadCount() );
+    }
+
+    @Test
+    public void testWindow()
+            throws Exception
+    {
+        SQLBatchLoader<User, String> loader = new SQLBatchLoader<>( ds, UserDAOImpl::new, scheduler, 20, TimeUnit.MILLISECONDS, 100 );
+
+        CompletableFuture<User> user3 = loader.load( "3" );
+        assertEquals( "user4", loader.find( "4" ).getName() );
+        assertEquals( "user3", user3.get().getName() );
+        assertEquals( 1, loader.getBatchCount() );
+    }
+
+    @Test
+    public void testSchedulerShutdown()
+            throws Exception
+    {
+        SQLBatchLoader<User, String> loader = new SQLBatchLoader<>( ds, UserDAOImpl::new, scheduler, 20, TimeUnit.MILLISECONDS, 100 );
+        scheduler.shutdownNow();
+
+        // The requests fail instead of waiting forever
+        for ( int i = 0; i < 2; i++ ) {
+            CompletableFuture<User> user = loader.load( "3" );
+            assertTrue( user.isCompletedExceptionally() );
+            try {
+                user.get( 1, TimeUnit.SECONDS );
+                fail();
+            } catch ( ExecutionException ex ) {
+                assertTrue( ex.getCause() instanceof RejectedExecutionException );
+            }
+        }
+        assertEquals( 0, loader.getCoalescedCount() );
+    }
+
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sqlite.SQLiteDataSource;
+
+/**
+ *
+ * @author Fabien Barbero
+ */
+public class SQLBatchTest
+{
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( SQLBatchTest.class );
+
+    private static final int ROWS = 20000;
+
+    private SQLiteDataSource ds;
+    private File tmpFile;
+
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        tmpFile = File.createTempFile( "sqlite-", ".db" ).getCanonicalFile();
+
+        ds = new SQLiteDataSource();
+        ds.setEncoding( "UTF-8" );
+        ds.setUrl( "jdbc:sqlite:" + tmpFile );
+
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLRunner exec = new SQLRunner( tx );
+            exec.execute( new SQLQueryBuilder( "create table USERS ("
+                                               + "UUID char(36) primary key, "
+                                               + "NAME varchar(128) not null, "
+                                               + "EMAIL varchar(128) not null)" ) );
+            tx.commit();
+        }
+    }
+
+    @After
+    public void tearDown()
+            throws Exception
+    {
+        tmpFile.delete();
+    }
+
+    @Test
+    public void testExecuteBatch()
+            throws Exception
+    {
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLRunner exec = new SQLRunner( tx );
+
+            List<int[]> counts = exec.executeBatch( "insert into USERS (UUID, EMAIL, NAME) values (?,?,?)", newRows( 25 ), 10 );
+            assertEquals( 3, counts.size() );
+            assertEquals( 10, counts.get( 0 ).length );
+            assertEquals( 10, counts.get( 1 ).length );
+            assertEquals( 5, counts.get( 2 ).length );
+            assertEquals( 25, exec.count( new SQLQueryBuilder( "select count(*) from USERS" ) ) );
+
+            assertTrue( exec.executeBatch( "delete from USERS where UUID=?", new ArrayList<>() ).isEmpty() );
+        }
+    }
+
+    @Test
+    public void testFailedBatchWithStatementCache()
+            throws Exception
+    {
+        String query = "insert into USERS (UUID, EMAIL, NAME) values (?,?,?)";
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            tx.enableStatementCache( 10 );
+            SQLRunner exec = new SQLRunner( tx );
+            exec.setParameterBinders( new SQLParameterBinders().register( StringBuilder.class, ( st, index, value ) -> {
+                throw new SQLException( "Invalid value" );
+            } ) );
+
+            // The second row cannot be bound while the first one is already added to the batch
+            try {
+                exec.executeBatch( query, Arrays.asList( new Object[]{ "1", "john@doe.com", "john doe" },
+                                                         new Object[]{ "2", "jane@doe.com", new StringBuilder() } ) );
+                fail();
+            } catch ( SQLFaultException ex ) {
+                // Expected
+            }
+
+            List<int[]> counts = exec.executeBatch( query, Arrays.<Object[]>asList( new Object[]{ "3", "jack@doe.com", "jack doe" } ) );
+            assertEquals( 1, counts.get( 0 ).length );
+            assertEquals( 1, exec.count( new SQLQueryBuilder( "select count(*) from USERS" ) ) );
+            assertEquals( 1, tx.getStatementCache().getHitCount() );
+        }
+    }
+
+    @Test
+    public void testBulkInsert()
+            throws Exception
+    {
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLStatementCache cache = tx.enableStatementCache( 16 );
+            SQLRunner exec = new SQLRunner( tx );
+
+            SQLBulkInsert insert = new SQLBulkInsert( "USERS", "UUID", "EMAIL", "NAME" );
+            insert.setMaxRows( 10 );
+            assertEquals( 47, insert.insert( exec, newRows( 47 ) ) );
+            assertEquals( 47, exec.count( new SQLQueryBuilder( "select count(*) from USERS" ) ) );
+
+            // 4 chunks of 10 rows, then 4 + 2 + 1 rows, and the count query
+            assertEquals( 5, cache.getMissCount() );
+            assertEquals( 3, cache.getHitCount() );
+
+            insert.setMaxParameters( 6 );
+            assertEquals( 5, insert.insert( exec, newRows( 5 ) ) );
+            assertEquals( 52, exec.count( new SQLQueryBuilder( "select count(*) from USERS" ) ) );
+        }
+    }
+
+    @Test
+    public void testBatchThroughput()
+            throws Exception
+    {
+        long rowByRow;
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLRunner exec = new SQLRunner( tx );
+            long start = System.nanoTime();
+            for ( Object[] row : newRows( ROWS ) ) {
+                exec.execute( new SQLQueryBuilder( "insert into USERS (UUID, EMAIL, NAME) values (?,?,?)", row ) );
+            }
+            rowByRow = System.nanoTime() - start;
+            assertEquals( ROWS, exec.count( new SQLQueryBuilder( "select count(*) from USERS" ) ) );
+            tx.rollback();
+        }
+
+        long batched;
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLRunner exec = new SQLRunner( tx );
+            long start = System.nanoTime();
+            exec.executeBatch( "insert into USERS (UUID, EMAIL, NAME) values (?,?,?)", newRows( ROWS ) );
+            batched = System.nanoTime() - start;
+            assertEquals( ROWS, exec.count( new SQLQueryBuilder( "select count(*) from USERS" ) ) );
+            tx.rollback();
+        }
+
+        long bulk;
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLRunner exec = new SQLRunner( tx );
+            long start = System.nanoTime();
+            new SQLBulkInsert( "USERS", "UUID", "EMAIL", "NAME" ).insert( exec, newRows( ROWS ) );
+            bulk = System.nanoTime() - start;
+            assertEquals( ROWS, exec.count( new SQLQueryBuilder( "select count(*) from USERS" ) ) );
+            tx.rollback();
+        }
+
+        LOGGER.info( "{} inserts: row-at-a-time {} ms, batched {} ms, multi-row values {} ms",
+                     ROWS, rowByRow / 1000000, batched / 1000000, bulk / 1000000 );
+    }
+
+    @Test
+    public void testExecuteReturningKeys()
+            throws Exception
+    {
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLRunner exec = new SQLRunner( tx );
+            exec.execute( new SQLQueryBuilder( "create table EVENTS (ID integer primary key autoincrement, NAME varchar(32) not null)" ) );
+
+            SQLRecordMapper<Long> keyMapper = record -> record.getLongOrDefault( 1, 0 );
+            assertEquals( Arrays.asList( 1L ), exec.executeReturningKeys( keyMapper, new SQLQueryBuilder( "insert into EVENTS (NAME) values (?)", "first" ) ) );
+            assertEquals( Arrays.asList( 2L ), exec.executeReturningKeys( keyMapper, new SQLQueryBuilder( "insert into EVENTS (NAME) values (?)", "second" ) ) );
+
+            List<Object[]> rows = new ArrayList<>();
+            for ( int i = 0; i < 10; i++ ) {
+                rows.add( new Object[]{ "event " + i } );
+            }
+            List<Long> keys = exec.executeBatchReturningKeys( keyMapper, "insert into EVENTS (NAME) values (?)", rows, 5 );
+            assertFalse( keys.isEmpty() );
+            assertEquals( 12L, ( long ) keys.get( keys.size() - 1 ) );
+        }
+    }
+
+    private static List<Object[]> newRows( int count )
+    {
+        List<Object[]> rows = new ArrayList<>( count );
+        for ( int i = 0; i < count; i++ ) {
+            rows.add( new Object[]{ UUID.randomUUID().toString(), "user" + i + "@doe.com", "user " + i } );
+        }
+        return rows;
+    }
+
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.sqlite.SQLiteConnection;
+import org.sqlite.SQLiteDataSource;
+
+/**
+ *
+ * @author Fabien Barbero
+ */
+public class SQLConnectionPoolTest
+{
+
+    private SQLiteDataSource ds;
+    private File tmpFile;
+
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        tmpFile = File.createTempFile( "sqlite-", ".db" ).getCanonicalFile();
+
+        ds = new SQLiteDataSource();
+        ds.setEncoding( "UTF-8" );
+        ds.setUrl( "jdbc:sqlite:" + tmpFile );
+    }
+
+    @After
+    public void tearDown()
+            throws Exception
+    {
+        tmpFile.delete();
+    }
+
+    @Test
+    public void testReuse()
+            throws Exception
+    {
+        try (SQLConnectionPool pool = new SQLConnectionPool( ds, 1, 2 )) {
+            assertEquals( 1, pool.getTotalCount() );
+
+            Connection physical;
+            try (SQLTransaction tx = SQLTransaction.begin( pool )) {
+                new SQLRunner( tx ).execute( new SQLQueryBuilder( "create table USERS (UUID char(36) primary key)" ) );
+                tx.commit();
+                physical = tx.getConnection().unwrap( SQLiteConnection.class );
+                assertEquals( 1, pool.getActiveCount() );
+                assertEquals( 0.5, pool.getUtilization(), 0 );
+            }
+            assertEquals( 0, pool.getActiveCount() );
+            assertEquals( 1, pool.getIdleCount() );
+
+            try (Connection conn = pool.getConnection()) {
+                assertSame( physical, conn.unwrap( SQLiteConnection.class ) );
+                // The auto-commit mode has been reset
+                assertTrue( conn.getAutoCommit() );
+            }
+            assertEquals( 1, pool.getCreatedCount() );
+            assertEquals( 2, pool.getBorrowCount() );
+        }
+    }
+
+    @Test
+    public void testLazyAcquisition()
+            throws Exception
+    {
+        try (SQLConnectionPool pool = new SQLConnectionPool( ds, 0, 1 )) {
+            try (SQLTransaction tx = SQLTransaction.begin( pool )) {
+                new SQLRunner( tx );
+                tx.commit();
+            }
+            assertEquals( 0, pool.getBorrowCount() );
+
+            try (SQLAccess access = SQLAccess.of( pool )) {
+                new SQLRunner( access ).count( new SQLQueryBuilder( "select 1" ) );
+                assertEquals( 1, pool.getActiveCount() );
+            }
+            assertEquals( 0, pool.getActiveCount() );
+            assertEquals( 1, pool.getBorrowCount() );
+        }
+    }
+
+    @Test
+    public void testClosedConnection()
+            throws Exception
+    {
+        try (SQLConnectionPool pool = new SQLConnectionPool( ds, 0, 1 )) {
+            Connection conn = pool.getConnection();
+            conn.close();
+            conn.close();
+            assertTrue( conn.isClosed() );
+            try {
+                conn.createStatement();
+                fail();
+            } catch ( SQLException ex ) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void testRollbackOnReturn()
+            throws Exception
+    {
+        try (SQLConnectionPool pool = new SQLConnectionPool( ds, 1, 1 )) {
+            try (SQLTransaction tx = SQLTransaction.begin( pool )) {
+                new SQLRunner( tx ).execute( new SQLQueryBuilder( "create table USERS (UUID char(36) primary key)" ) );
+                tx.commit();
+            }
+            try (SQLTransaction tx = SQLTransaction.begin( pool )) {
+                new SQLRunner( tx ).execute( new SQLQueryBuilder( "insert into USERS (UUID) values (?)", "1" ) );
+            }
+            try (SQLTransaction tx = SQLTransaction.begin( pool )) {
+                assertEquals( 0, new SQLRunner( tx ).count( new SQLQueryBuilder( "select count(*) from USERS" ) ) );
+            }
+        }
+    }
+
+    @Test
+    public void testBorrowTimeout()
+            throws Exception
+    {
+        try (SQLConnectionPool pool = new SQLConnectionPool( ds, 0, 1 )) {
+            pool.setBorrowTimeout( 50, TimeUnit.MILLISECONDS );
+            try (Connection conn = pool.getConnection()) {
+                pool.getConnection();
+                fail();
+            } catch ( SQLTransientConnectionException ex ) {
+                // Expected
+            }
+            assertEquals( 1, pool.getTimeoutCount() );
+            assertTrue( pool.getMaxWaitNanos() >= TimeUnit.MILLISECONDS.toNanos( 50 ) );
+            assertEquals( 0, pool.getActiveCount() );
+        }
+    }
+
+    @Test
+    public void testValidationAndEviction()
+            throws Exception
+    {
+        try (SQLConnectionPool pool = new SQLConnectionPool( ds, 1, 3 )) {
+            pool.setValidationInterval( 0, TimeUnit.MILLISECONDS );
+            pool.setIdleTimeout( 0, TimeUnit.MILLISECONDS );
+
+            // The physical connection has been closed while idle
+            Connection first = pool.getConnection();
+            Connection physical = first.unwrap( SQLiteConnection.class );
+            first.close();
+            physical.close();
+            try (Connection conn = pool.getConnection()) {
+                assertNotSame( physical, conn.unwrap( SQLiteConnection.class ) );
+            }
+            assertEquals( 1, pool.getDiscardedCount() );
+
+            // The idle connections above the minimum size are closed
+            Connection c1 = pool.getConnection();
+            Connection c2 = pool.getConnection();
+            Connection c3 = pool.getConnection();
+            assertEquals( 3, pool.getTotalCount() );
+            c1.close();
+            c2.close();
+            c3.close();
+            assertEquals( 1, pool.getTotalCount() );
+            assertEquals( 1, pool.getIdleCount() );
+        }
+    }
+
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.sqlite.SQLiteDataSource;
+
+/**
+ *
+ * @author Fabien Barbero
+ */
+public class SQLEntityCacheTest
+{
+
+    private SQLiteDataSource ds;
+    private File tmpFile;
+    private SQLEntityCache<String, User> cache;
+
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        tmpFile = File.createTempFile( "sqlite-", ".db" ).getCanonicalFile();
+
+        ds = new SQLiteDataSource();
+        ds.setEncoding( "UTF-8" );
+        ds.setUrl( "jdbc:sqlite:" + tmpFile );
+
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLRunner exec = new SQLRunner( tx );
+            exec.execute( new SQLQueryBuilder( "create table USERS ("
+                                               + "UUID char(36) primary key, "
+                                               + "NAME varchar(128) not null, "
+                                               + "EMAIL varchar(128) not null)" ) );
+            for ( int i = 0; i < 3; i++ ) {
+                exec.execute( new SQLQueryBuilder( "insert into USERS (UUID, EMAIL, NAME) values (?,?,?)",
+                                                   String.valueOf( i ), "user" + i + "@doe.com", "user" + i ) );
+            }
+            tx.commit();
+        }
+        cache = new SQLEntityCache<>( 100, user -> 1, SQLEntityCacheTest::copy );
+    }
+
+    @After
+    public void tearDown()
+            throws Exception
+    {
+        tmpFile.delete();
+    }
+
+    @Test
+    public void testFind()
+            throws Exception
+    {
+        assertEquals( "user0", find( "0" ).getName() );
+        assertEquals( "user0", find( "0" ).getName() );
+        assertNull( find( "unknown" ) );
+        assertEquals( 1, cache.getHitCount() );
+        assertEquals( 2, cache.getMissCount() );
+        assertEquals( 1, cache.size() );
+    }
+
+    @Test
+    public void testFindAll()
+            throws Exception
+    {
+        find( "1" );
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            tx.enableStatementCache( 10 );
+            UserBaseDAO dao = new UserBaseDAO( tx );
+            Map<String, User> users = dao.findAll( Arrays.asList( "2", "unknown", "1", "0", "2" ) );
+            assertEquals( Arrays.asList( "2", "unknown", "1", "0" ), new ArrayList<>( users.keySet() ) );
+            assertNull( users.get( "unknown" ) );
+            assertEquals( "user2", users.get( "2" ).getName() );
+            assertEquals( "user0", users.get( "0" ).getName() );
+
+            // 3 missing keys and 700 keys use "in" clauses of 4 and 512 + 256 keys
+            List<String> keys = new ArrayList<>();
+            for ( int i = 0; i < 700; i++ ) {
+                keys.add( "key" + i );
+            }
+            dao.findAll( keys );
+            dao.findAll( Arrays.asList( "a", "b", "c", "d" ) );
+            assertEquals( 3, tx.getStatementCache().getMissCount() );
+
+            // Temporary table above the threshold
+            dao.setTempTableThreshold( 100, "char(36)" );
+            keys.addAll( Arrays.asList( "1", "2" ) );
+            users = dao.findAll( keys );
+            assertEquals( 702, users.size() );
+            assertEquals( "user1", users.get( "1" ).getName() );
+            assertNull( users.get( "key0" ) );
+        }
+        assertEquals( 3, cache.size() );
+    }
+
+    @Test
+    public void testUpdate()
+            throws Exception
+    {
+        find( "0" );
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            UserBaseDAO dao = new UserBaseDAO( tx );
+            User user = dao.find( "0" );
+            user.setName( "john" );
+            // The cached entity is a copy, so the uncommitted change is not visible to the others
+            assertEquals( "user0", cache.get( "0" ).getName() );
+            dao.updateEntity( user );
+            assertEquals( 0, cache.size() );
+
+            // The transaction reads its own changes, which are not cached
+            assertEquals( "john", dao.find( "0" ).getName() );
+            assertEquals( 0, cache.size() );
+            tx.commit();
+        }
+
+        assertEquals( "john", find( "0" ).getName() );
+        assertEquals( 1, cache.size() );
+    }
+
+    @Test
+    public void testDelete()
+            throws Exception
+    {
+        find( "1" );
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            UserBaseDAO dao = new UserBaseDAO( tx );
+            dao.deleteEntity( "1" );
+            assertNull( dao.find( "1" ) );
+            tx.rollback();
+
+            // The entity is back after the rollback
+            assertNotNull( dao.find( "1" ) );
+        }
+        assertEquals( 1, cache.size() );
+        assertEquals( 1, cache.getInvalidationCount() );
+    }
+
+    @Test
+    public void testEviction()
+            throws Exception
+    {
+        SQLEntityCache<String, User> small = new SQLEntityCache<>( 16 );
+        for ( int i = 0; i < 100; i++ ) {
+            User user = User.newInstance( "user" + i, "user" + i + "@doe.com" );
+            small.put( user.getUuid(), user, small.getGeneration( user.getUuid() ) );
+        }
+        assertTrue( small.size() <= 16 );
+        assertEquals( 100, small.size() + small.getEvictionCount() );
+    }
+
+    @Test
+    public void testWithoutTransaction()
+            throws Exception
+    {
+        try (SQLAccess access = SQLAccess.of( ds )) {
+            UserBaseDAO dao = new UserBaseDAO( access );
+            assertEquals( "user0", dao.find( "0" ).getName() );
+            assertEquals( "user1", dao.findAll( Arrays.asList( "1" ) ).get( "1" ).getName() );
+        }
+        assertEquals( 0, cache.size() );
+        assertEquals( 0, cache.getMissCount() );
+    }
+
+    private static User copy( User user )
+    {
+        User copy = new User();
+        copy.setUuid( user.getUuid() );
+        copy.setName( user.getName() );
+        copy.setEmail( user.getEmail() );
+        return copy;
+    }
+
+    private User find( String key )
+    {
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            return new UserBaseDAO( tx ).find( key );
+        }
+    }
+
+    private class UserBaseDAO
+            extends AbstractBaseDAO<User, String>
+    {
+
+        UserBaseDAO( HasSQLConnection conn )
+        {
+            super( "USERS", "UUID", conn );
+            setEntityCache( cache );
+        }
+
+        @Override
+        public User buildEntity( SQLRecord record )
+        {
+            User user = new User();
+            user.setUuid( record.getString( "UUID" ).get() );
+            user.setEmail( record.getString( "EMAIL" ).get() );
+            user.setName( record.getString( "NAME" ).get() );
+            return user;
+        }
+
+        @Override
+        public void addEntity( User entity )
+                throws SQLFaultException
+        {
+            execute( new SQLQueryBuilder( "insert into USERS (UUID, EMAIL, NAME) values (?,?,?)",
+                                          entity.getUuid(), entity.getEmail(), entity.getName() ) );
+        }
+
+        @Override
+        protected void update( User entity )
+                throws SQLFaultException
+        {
+            execute( new SQLQueryBuilder( "update USERS set EMAIL=?, NAME=? where UUID=?",
+                                          entity.getEmail(), entity.getName(), entity.getUuid() ) );
+        }
+    }
+
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.sqlite.SQLiteDataSource;
+
+/**
+ *
+ * @author Fabien Barbero
+ */
+public class SQLListenersTest
+{
+
+    private static final String INSERT = "insert into USERS (UUID, EMAIL, NAME) values (?,?,?)";
+    private static final String SELECT = "select * from USERS";
+
+    private SQLiteDataSource ds;
+    private File tmpFile;
+    private SQLLatencyHistograms histograms;
+    private RecordingListener recorder;
+
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        tmpFile = File.createTempFile( "sqlite-", ".db" ).getCanonicalFile();
+
+        ds = new SQLiteDataSource();
+        ds.setEncoding( "UTF-8" );
+        ds.setUrl( "jdbc:sqlite:" + tmpFile );
+
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLRunner exec = new SQLRunner( tx );
+            exec.execute( new SQLQueryBuilder( "create table USERS ("
+                                               + "UUID char(36) primary key, "
+                                               + "NAME varchar(128) not null, "
+                                               + "EMAIL varchar(128) not null)" ) );
+            tx.commit();
+        }
+
+        histograms = new SQLLatencyHistograms( 100 );
+        recorder = new RecordingListener();
+        SQLListeners.add( histograms );
+        SQLListeners.add( recorder );
+    }
+
+    @After
+    public void tearDown()
+            throws Exception
+    {
+        SQLListeners.remove( histograms );
+        SQLListeners.remove( recorder );
+        tmpFile.delete();
+    }
+
+    @Test
+    public void testListeners()
+            throws Exception
+    {
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLRunner exec = new SQLRunner( tx );
+            exec.execute( new SQLQueryBuilder( INSERT, "1", "john@doe.com", "john" ) );
+            exec.executeBatch( INSERT, Arrays.asList( new Object[]{ "2", "jane@doe.com", "jane" },
+                                                      new Object[]{ "3", "jack@doe.com", "jack" } ) );
+            assertEquals( 3, exec.query( record -> record.getString( "NAME" ).get(), new SQLQueryBuilder( SELECT ) ).size() );
+            try (SQLIterator<String> it = exec.queryIterator( record -> record.getString( "NAME" ).get(), null, false, new SQLQueryBuilder( SELECT ) )) {
+                it.hasNext();
+                it.next();
+            }
+            try {
+                exec.execute( new SQLQueryBuilder( INSERT, "1", "john@doe.com", "john" ) );
+                fail();
+            } catch ( SQLFaultException ex ) {
+                // Duplicate key
+            }
+            tx.commit();
+        }
+
+        assertEquals( 5, recorder.executions.size() );
+        SQLExecution batch = recorder.executions.get( 1 );
+        assertEquals( 6, batch.getParameterCount() );
+        assertEquals( 2, batch.getRows() );
+        assertEquals( 1, recorder.executions.get( 3 ).getRows() );
+        assertNotNull( recorder.executions.get( 4 ).getError() );
+        assertEquals( 1, recorder.commits );
+
+        SQLLatencyHistograms.Histogram insert = histograms.getHistogram( INSERT );
+        assertEquals( 3, insert.getCount() );
+        assertEquals( 1, insert.getErrorCount() );
+        assertEquals( 3, insert.getRowCount() );
+        assertEquals( 2, histograms.getHistogram( SELECT ).getCount() );
+        assertTrue( insert.getPercentileNanos( 50 ) <= insert.getMaxNanos() );
+        assertEquals( insert.getMaxNanos(), insert.getPercentileNanos( 100 ) );
+    }
+
+    @Test
+    public void testMapperError()
+            throws Exception
+    {
+        SQLRecordMapper<String> mapper = record -> record.getString( "MISSING" ).get();
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLRunner exec = new SQLRunner( tx );
+            exec.execute( new SQLQueryBuilder( INSERT, "1", "john@doe.com", "john" ) );
+            try {
+                exec.query( mapper, new SQLQueryBuilder( SELECT ) );
+                fail();
+            } catch ( SQLFaultException ex ) {
+                // Unknown column
+            }
+            try (SQLIterator<String> it = exec.queryIterator( mapper, null, false, new SQLQueryBuilder( SELECT ) )) {
+                assertTrue( it.hasNext() );
+                it.next();
+                fail();
+            } catch ( SQLFaultException ex ) {
+                // Unknown column
+            }
+        }
+
+        assertEquals( 3, recorder.executions.size() );
+        assertNotNull( recorder.executions.get( 1 ).getError() );
+        assertNotNull( recorder.executions.get( 2 ).getError() );
+        assertEquals( 2, histograms.getHistogram( SELECT ).getErrorCount() );
+    }
+
+    @Test
+    public void testSlowQueryLogger()
+            throws Exception
+    {
+        SQLSlowQueryLogger logger = new SQLSlowQueryLogger( 0, TimeUnit.MILLISECONDS );
+        logger.setMaxMessagesPerSecond( 0.1 );
+        logger.setParameterFormatter( SQLSlowQueryLogger.PLAIN );
+        SQLListeners.add( logger );
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLRunner exec = new SQLRunner( tx );
+            for ( int i = 0; i < 5; i++ ) {
+                exec.execute( new SQLQueryBuilder( INSERT, String.valueOf( i ), "john@doe.com", "john" ) );
+            }
+            tx.commit();
+        } finally {
+            SQLListeners.remove( logger );
+        }
+
+        // 5 statements and 1 transaction, only the first one is logged
+        assertEquals( 6, logger.getSlowCount() );
+        assertEquals( 5, logger.getSkippedCount() );
+    }
+
+    @Test
+    public void testBuckets()
+    {
+        for ( long value : new long[]{ 0, 7, 8, 15, 16, 17, 1000, 123456789, Long.MAX_VALUE } ) {
+            long upper = SQLLatencyHistograms.Histogram.upperBound( SQLLatencyHistograms.Histogram.bucket( value ) );
+            assertTrue( upper >= value );
+            assertTrue( upper - value <= value / 8 );
+        }
+    }
+
+    private static class RecordingListener
+            implements SQLListener
+    {
+
+        private final List<SQLExecution> executions = new ArrayList<>();
+        private int commits;
+
+        @Override
+        public void statementExecuted( SQLExecution execution )
+        {
+            executions.add( execution );
+        }
+
+        @Override
+        public void transactionCompleted( boolean committed, long elapsedNanos, Throwable error )
+        {
+            if ( committed ) {
+                commits++;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.sqlite.SQLiteDataSource;
+
+/**
+ *
+ * @author Fabien Barbero
+ */
+public class SQLParallelScanTest
+{
+
+    private static final int ROWS = 1000;
+
+    private SQLiteDataSource ds;
+    private File tmpFile;
+
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        tmpFile = File.createTempFile( "sqlite-", ".db" ).getCanonicalFile();
+
+        ds = new SQLiteDataSource();
+        ds.setEncoding( "UTF-8" );
+        ds.setUrl( "jdbc:sqlite:" + tmpFile );
+
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLRunner exec = new SQLRunner( tx );
+            exec.execute( new SQLQueryBuilder( "create table ITEMS (ID integer primary key, NAME varchar(32) not null)" ) );
+            List<Object[]> rows = new ArrayList<>();
+            for ( int i = 1; i <= ROWS; i++ ) {
+                rows.add( new Object[]{ i * 3L, "item " + i } );
+            }
+            exec.executeBatch( "insert into ITEMS (ID, NAME) values (?,?)", rows );
+            tx.commit();
+        }
+    }
+
+    @After
+    public void tearDown()
+            throws Exception
+    {
+        tmpFile.delete();
+    }
+
+    @Test
+    public void testPartitions()
+            throws Exception
+    {
+        List<SQLParallelScan.Partition> partitions = new SQLParallelScan( ds, "ITEMS", "ID", 4 ).getPartitions();
+        assertEquals( 4, partitions.size() );
+        assertEquals( 3, partitions.get( 0 ).getLower() );
+        assertNull( partitions.get( 3 ).getUpper() );
+        for ( int i = 1; i < partitions.size(); i++ ) {
+            assertEquals( ( long ) partitions.get( i - 1 ).getUpper(), partitions.get( i ).getLower() );
+        }
+
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            new SQLRunner( tx ).execute( new SQLQueryBuilder( "delete from ITEMS" ) );
+            tx.commit();
+        }
+        assertTrue( new SQLParallelScan( ds, "ITEMS", "ID", 4 ).getPartitions().isEmpty() );
+    }
+
+    @Test
+    public void testParallelStream()
+            throws Exception
+    {
+        SQLParallelScan scan = new SQLParallelScan( ds, "ITEMS", "ID", 4 );
+        Set<Long> ids = scan.stream( record -> record.getLongOrDefault( "ID", 0 ) ).collect( Collectors.toSet() );
+        assertEquals( ROWS, ids.size() );
+        assertTrue( ids.contains( 3L ) );
+        assertTrue( ids.contains( ROWS * 3L ) );
+    }
+
+    @Test
+    public void testForkJoin()
+            throws Exception
+    {
+        SQLParallelScan scan = new SQLParallelScan( ds, "ITEMS", "ID", 3 );
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        scan.forEach( record -> record.getLongOrDefault( "ID", 0 ), ids::add, new ForkJoinPool( 3 ) );
+        assertEquals( ROWS, ids.size() );
+    }
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.sqlite.SQLiteDataSource;
+
+/**
+ *
+ * @author Fabien Barbero
+ */
+public class SQLQueryCacheTest
+{
+
+    private static final SQLRecordMapper<String> NAME_MAPPER = record -> record.getString( "NAME" ).get();
+
+    private SQLiteDataSource ds;
+    private File tmpFile;
+
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        tmpFile = File.createTempFile( "sqlite-", ".db" ).getCanonicalFile();
+
+        ds = new SQLiteDataSource();
+        ds.setEncoding( "UTF-8" );
+        ds.setUrl( "jdbc:sqlite:" + tmpFile );
+
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLRunner exec = new SQLRunner( tx );
+            exec.execute( new SQLQueryBuilder( "create table USERS ("
+                                               + "UUID char(36) primary key, "
+                                               + "NAME varchar(128) not null, "
+                                               + "EMAIL varchar(128) not null)" ) );
+            tx.commit();
+        }
+    }
+
+    @After
+    public void tearDown()
+            throws Exception
+    {
+        tmpFile.delete();
+    }
+
+    @Test
+    public void testInvalidationOnCommit()
+            throws Exception
+    {
+        SQLQueryCache cache = new SQLQueryCache( 10, 1, TimeUnit.HOURS );
+        SQLQueryBuilder query = new SQLQueryBuilder( "select NAME from USERS where EMAIL like ?", "%@doe.com" );
+
+        assertTrue( read( cache, query ).isEmpty() );
+        assertTrue( read( cache, query ).isEmpty() );
+        assertEquals( 1, cache.getHitCount() );
+        assertEquals( 1, cache.getMissCount() );
+
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLRunner writer = new SQLRunner( tx );
+            writer.setQueryCache( cache );
+            writer.execute( new SQLQueryBuilder( "insert into \"USERS\" (UUID, EMAIL, NAME) values (?,?,?)", "1", "john@doe.com", "john" ) );
+            assertEquals( 0, cache.size() );
+
+            // The writer sees its own changes
+            assertEquals( 1, writer.queryCached( NAME_MAPPER, query, "USERS" ).size() );
+            assertEquals( 0, cache.size() );
+
+            tx.commit();
+        }
+
+        assertEquals( 1, read( cache, query ).size() );
+        assertEquals( 1, cache.size() );
+        assertEquals( 1, cache.getInvalidationCount() );
+    }
+
+    @Test
+    public void testRollback()
+            throws Exception
+    {
+        SQLQueryCache cache = new SQLQueryCache( 10, 1, TimeUnit.HOURS );
+        SQLQueryBuilder query = new SQLQueryBuilder( "select NAME from USERS" );
+
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLRunner writer = new SQLRunner( tx );
+            writer.setQueryCache( cache );
+            writer.execute( new SQLQueryBuilder( "insert into USERS (UUID, EMAIL, NAME) values (?,?,?)", "1", "john@doe.com", "john" ) );
+            tx.rollback();
+
+            // The transaction can use the cache again
+            assertTrue( writer.queryCached( NAME_MAPPER, query, "USERS" ).isEmpty() );
+            assertEquals( 1, cache.size() );
+        }
+    }
+
+    @Test
+    public void testEviction()
+            throws Exception
+    {
+        SQLQueryCache cache = new SQLQueryCache( 2, 50, TimeUnit.MILLISECONDS );
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLRunner exec = new SQLRunner( tx );
+            exec.setQueryCache( cache );
+            for ( int i = 0; i < 3; i++ ) {
+                exec.queryCached( NAME_MAPPER, new SQLQueryBuilder( "select NAME from USERS where UUID=?", String.valueOf( i ) ), "USERS" );
+            }
+            assertEquals( 2, cache.size() );
+            assertEquals( 1, cache.getEvictionCount() );
+
+            Thread.sleep( 100 );
+            exec.queryCached( NAME_MAPPER, new SQLQueryBuilder( "select NAME from USERS where UUID=?", "2" ), "USERS" );
+            assertEquals( 1, cache.getExpirationCount() );
+            assertEquals( 0, cache.getHitRatio(), 0 );
+        }
+    }
+
+    @Test
+    public void testTableGenerations()
+            throws Exception
+    {
+        SQLQueryCache cache = new SQLQueryCache( 10, 1, TimeUnit.HOURS );
+        String[] tables = { "USERS" };
+        SQLQueryCache.Key key = new SQLQueryCache.Key( String.class, "select NAME from USERS", Collections.emptyList() );
+
+        // The modification of another table does not prevent the result to be cached
+        long generation = cache.getGeneration( tables );
+        cache.invalidate( "GROUPS" );
+        cache.put( key, Collections.emptyList(), tables, generation );
+        assertEquals( 1, cache.size() );
+
+        // The result may be stale if its table has been modified while it was read
+        generation = cache.getGeneration( tables );
+        cache.invalidate( "users" );
+        cache.put( key, Collections.emptyList(), tables, generation );
+        assertEquals( 0, cache.size() );
+    }
+
+    private List<String> read( SQLQueryCache cache, SQLQueryBuilder query )
+    {
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLRunner exec = new SQLRunner( tx );
+            exec.setQueryCache( cache );
+            return exec.queryCached( NAME_MAPPER, query, "USERS" );
+        }
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.sqlite.SQLiteDataSource;
+
+/**
+ *
+ * @author Fabien Barbero
+ */
+public class SQLQueryTemplateTest
+{
+
+    private static final SQLRecordMapper<String> NAME_MAPPER = record -> record.getString( "NAME" ).get();
+
+    private SQLiteDataSource ds;
+    private File tmpFile;
+
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        tmpFile = File.createTempFile( "sqlite-", ".db" ).getCanonicalFile();
+
+        ds = new SQLiteDataSource();
+        ds.setEncoding( "UTF-8" );
+        ds.setUrl( "jdbc:sqlite:" + tmpFile );
+
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLRunner exec = new SQLRunner( tx );
+            exec.execute( new SQLQueryBuilder( "create table USERS ("
+                                               + "UUID char(36) primary key, "
+                                               + "NAME varchar(128) not null, "
+                                               + "EMAIL varchar(128) not null)" ) );
+            UserDAO dao = new UserDAOImpl( tx );
+            dao.addEntity( User.newInstance( "John", "john@doe.com" ) );
+            dao.addEntity( User.newInstance( "Jane", "jane@doe.com" ) );
+            tx.commit();
+        }
+    }
+
+    @After
+    public void tearDown()
+            throws Exception
+    {
+        tmpFile.delete();
+    }
+
+    @Test
+    public void testPositional()
+            throws Exception
+    {
+        SQLQueryTemplate template = SQLQueryTemplate.compile( "select NAME from USERS where NAME = ? or EMAIL = ? order by NAME" );
+        assertEquals( "select NAME from USERS where NAME = ? or EMAIL = ? order by NAME", template.getSQL() );
+        assertEquals( 2, template.getParameterCount() );
+        assertTrue( template.getParameterNames().isEmpty() );
+
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLRunner runner = new SQLRunner( tx );
+            assertEquals( Arrays.asList( "Jane", "John" ), runner.query( NAME_MAPPER, template.bind( "John", "jane@doe.com" ) ) );
+            assertEquals( Collections.singletonList( "Jane" ), runner.query( NAME_MAPPER, template.bind( "Jane", "none" ) ) );
+        }
+    }
+
+    @Test
+    public void testNamed()
+            throws Exception
+    {
+        SQLQueryTemplate template = SQLQueryTemplate.compile( "select NAME from USERS where NAME = :name or EMAIL like :email or NAME = :name" );
+        assertEquals( "select NAME from USERS where NAME = ? or EMAIL like ? or NAME = ?", template.getSQL() );
+        assertEquals( 3, template.getParameterCount() );
+        assertEquals( Arrays.asList( "name", "email" ), template.getParameterNames() );
+        assertEquals( 1, template.getParameterIndex( "email" ) );
+
+        Map<String, Object> values = new HashMap<>();
+        values.put( "name", "John" );
+        values.put( "email", "jane@%" );
+
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLRunner runner = new SQLRunner( tx );
+            List<String> names = runner.query( NAME_MAPPER, template.bind( values ) );
+            assertEquals( 2, names.size() );
+            assertEquals( Collections.singletonList( "John" ), runner.query( NAME_MAPPER, template.bind( "John", "none" ) ) );
+        }
+    }
+
+    @Test
+    public void testIgnoredTokens()
+    {
+        SQLQueryTemplate template = SQLQueryTemplate.compile( "select ':a', \"?\" -- :b ?\n"
+                                                              + "from T /* :c */ where X::text = :d" );
+        assertEquals( "select ':a', \"?\" -- :b ?\nfrom T /* :c */ where X::text = ?", template.getSQL() );
+        assertEquals( Collections.singletonList( "d" ), template.getParameterNames() );
+    }
+
+    @Test
+    public void testBuilderFromTemplate()
+    {
+        SQLQueryTemplate template = SQLQueryTemplate.compile( "select * from USERS where NAME = :name" );
+        SQLQueryBuilder query = template.bind( "John" ).append( " and EMAIL = ?", "john@doe.com" );
+        assertEquals( "select * from USERS where NAME = ? and EMAIL = ?", query.getSQL() );
+        assertEquals( Arrays.asList( "John", "john@doe.com" ), query.getParams() );
+        assertEquals( "select * from USERS where NAME = ?", template.getSQL() );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testMixedParameters()
+    {
+        SQLQueryTemplate.compile( "select * from USERS where NAME = ? and EMAIL = :email" );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testPositionalParametersByName()
+    {
+        SQLQueryTemplate.compile( "select * from USERS where NAME = ?" ).bind( Collections.singletonMap( "name", "John" ) );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testMissingParameter()
+    {
+        SQLQueryTemplate.compile( "select * from USERS where NAME = :name" ).bind( Collections.emptyMap() );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testParametersCount()
+    {
+        SQLQueryTemplate.compile( "select * from USERS where NAME = ?" ).bind( "a", "b" );
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+/**
+ *
+ * @author Fabien Barbero
+ */
+public class SQLRetryExecutorTest
+{
+
+    private SQLiteDataSource ds;
+    private File tmpFile;
+
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        tmpFile = File.createTempFile( "sqlite-", ".db" ).getCanonicalFile();
+
+        // Fail immediately when the database is locked
+        Properties props = new Properties();
+        props.setProperty( "busy_timeout", "0" );
+        ds = new SQLiteDataSource( new SQLiteConfig( props ) );
+        ds.setEncoding( "UTF-8" );
+        ds.setUrl( "jdbc:sqlite:" + tmpFile );
+
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLRunner exec = new SQLRunner( tx );
+            exec.execute( new SQLQueryBuilder( "create table USERS ("
+                                               + "UUID char(36) primary key, "
+                                               + "NAME varchar(128) not null, "
+                                               + "EMAIL varchar(128) not null)" ) );
+            tx.commit();
+        }
+    }
+
+    @After
+    public void tearDown()
+            throws Exception
+    {
+        tmpFile.delete();
+    }
+
+    @Test
+    public void testRetryBusyDatabase()
+            throws Exception
+    {
+        CountDownLatch locked = new CountDownLatch( 1 );
+        Thread writer = new Thread( () -> {
+            try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+                new SQLRunner( tx ).execute( new SQLQueryBuilder( "insert into USERS (UUID, EMAIL, NAME) values (?,?,?)", "1", "john@doe.com", "john" ) );
+                locked.countDown();
+                Thread.sleep( 200 );
+                tx.commit();
+            } catch ( InterruptedException ex ) {
+                Thread.currentThread().interrupt();
+            }
+        } );
+        writer.start();
+        locked.await();
+
+        SQLRetryExecutor executor = new SQLRetryExecutor( ds );
+        executor.setMaxAttempts( 100 );
+        executor.setBackoff( 10, 50, TimeUnit.MILLISECONDS );
+        executor.run( tx -> new SQLRunner( tx ).execute( new SQLQueryBuilder( "insert into USERS (UUID, EMAIL, NAME) values (?,?,?)", "2", "jane@doe.com", "jane" ) ) );
+        writer.join();
+
+        assertTrue( executor.getRetryCount() > 0 );
+        assertEquals( 0, executor.getExhaustedCount() );
+        long count = executor.call( tx -> new SQLRunner( tx ).count( new SQLQueryBuilder( "select count(*) from USERS" ) ) );
+        assertEquals( 2, count );
+    }
+
+    @Test
+    public void testNotRetryable()
+            throws Exception
+    {
+        SQLRetryExecutor executor = new SQLRetryExecutor( ds );
+        AtomicInteger attempts = new AtomicInteger();
+        try {
+            executor.run( tx -> {
+                attempts.incrementAndGet();
+                new SQLRunner( tx ).execute( new SQLQueryBuilder( "insert into UNKNOWN values (1)" ) );
+            } );
+            fail();
+        } catch ( SQLFaultException ex ) {
+            // Expected
+        }
+        assertEquals( 1, attempts.get() );
+        assertEquals( 0, executor.getRetryCount() );
+    }
+
+    @Test
+    public void testMaxAttempts()
+            throws Exception
+    {
+        SQLRetryExecutor executor = new SQLRetryExecutor( ds );
+        executor.setMaxAttempts( 3 );
+        executor.setBackoff( 0, 0, TimeUnit.MILLISECONDS );
+        AtomicInteger attempts = new AtomicInteger();
+        try {
+            executor.run( tx -> {
+                attempts.incrementAndGet();
+                throw new SQLFaultException( "Conflict", new SQLException( "Serialization failure", "40001" ) );
+            } );
+            fail();
+        } catch ( SQLFaultException ex ) {
+            // Expected
+        }
+        assertEquals( 3, attempts.get() );
+        assertEquals( 2, executor.getRetryCount() );
+        assertEquals( 1, executor.getExhaustedCount() );
+    }
+
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2016 fabien.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package com.github.fabienbarbero.sql;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+/**
+ *
+ * @author Fabien Barbero
+ */
+public class SQLRouterTest
+{
+
+    private final List<File> files = new ArrayList<>();
+    private DataSource primary;
+    private List<SQLiteDataSource> replicas;
+
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        // SQLite cannot switch an open connection to read-only mode
+        primary = ignoreReadOnly( createDatabase( "primary" ) );
+        replicas = new ArrayList<>();
+        for ( int i = 0; i < 2; i++ ) {
+            SQLiteDataSource replica = createDatabase( "replica" + i );
+            SQLiteConfig config = new SQLiteConfig();
+            config.setReadOnly( true );
+            replica.setConfig( config );
+            replicas.add( replica );
+        }
+    }
+
+    @After
+    public void tearDown()
+            throws Exception
+    {
+        files.forEach( File::delete );
+    }
+
+    @Test
+    public void testRouting()
+            throws Exception
+    {
+        SQLRouter router = new SQLRouter( primary, replicas );
+        try (SQLTransaction tx = router.begin()) {
+            new SQLRunner( tx ).execute( new SQLQueryBuilder( "insert into SOURCE (NAME) values (?)", "written" ) );
+            tx.commit();
+        }
+        assertEquals( 1, router.getWriteCount() );
+
+        // Both replicas are used when reads are concurrent
+        try (SQLTransaction tx1 = router.begin( true, null );
+             SQLTransaction tx2 = router.begin( true, null )) {
+            assertNotEquals( source( tx1 ), source( tx2 ) );
+            assertTrue( source( tx1 ).startsWith( "replica" ) );
+            assertEquals( 1, router.getOutstandingCount( 0 ) );
+            assertEquals( 1, router.getOutstandingCount( 1 ) );
+
+            // The least loaded replica is chosen
+            try (SQLTransaction tx3 = router.begin( true, null )) {
+                source( tx3 );
+            }
+        }
+        assertEquals( 0, router.getOutstandingCount( 0 ) );
+        assertEquals( 0, router.getOutstandingCount( 1 ) );
+        assertEquals( 3, router.getReadCount( 0 ) + router.getReadCount( 1 ) );
+        assertEquals( 0, router.getPrimaryReadCount() );
+    }
+
+    @Test
+    public void testReadYourWrites()
+            throws Exception
+    {
+        SQLRouter router = new SQLRouter( primary, replicas );
+        router.setReadYourWritesWindow( 1, TimeUnit.HOURS );
+        try (SQLTransaction tx = router.begin( true, null )) {
+            assertTrue( source( tx ).startsWith( "replica" ) );
+        }
+
+        // A transaction without statement does not use the primary database
+        try (SQLTransaction tx = router.begin()) {
+            tx.commit();
+        }
+        assertEquals( 0, router.getWriteCount() );
+
+        try (SQLTransaction tx = router.begin()) {
+            new SQLRunner( tx ).execute( new SQLQueryBuilder( "insert into SOURCE (NAME) values (?)", "written" ) );
+            tx.commit();
+        }
+        try (SQLTransaction tx = router.begin( true, null )) {
+            assertEquals( "primary", source( tx ) );
+        }
+        assertEquals( 1, router.getPrimaryReadCount() );
+
+        // Other threads still use the replicas
+        String[] other = new String[ 1 ];
+        Thread thread = new Thread( () -> {
+            try (SQLTransaction tx = router.begin( true, null )) {
+                other[ 0 ] = source( tx );
+            }
+        } );
+        thread.start();
+        thread.join();
+        assertTrue( other[ 0 ].startsWith( "replica" ) );
+    }
+
+    @Test
+    public void testPrimaryFallback()
+            throws Exception
+    {
+        int[] attempts = new int[ 1 ];
+        DataSource broken = ( DataSource ) Proxy.newProxyInstance( SQLRouterTest.class.getClassLoader(), new Class<?>[]{ DataSource.class }, ( proxy, method, args ) -> {
+            attempts[ 0 ]++;
+            throw new SQLException( "Replica unavailable" );
+        } );
+        SQLRouter router = new SQLRouter( primary, Collections.singletonList( broken ) );
+        router.setReadYourWritesWindow( 1, TimeUnit.HOURS );
+
+        // The transaction is begun by this thread and used by another one
+        SQLTransaction tx = router.begin( true, null );
+        Thread thread = new Thread( () -> {
+            assertEquals( "primary", source( tx ) );
+            tx.close();
+        } );
+        thread.start();
+        thread.join();
+        assertEquals( 1, attempts[ 0 ] );
+
+        // The read on the primary database has opened the window of this thread
+        try (SQLTransaction tx2 = router.begin( true, null )) {
+            assertEquals( "primary", source( tx2 ) );
+        }
+        assertEquals( 1, attempts[ 0 ] );
+        assertEquals( 2, router.getPrimaryReadCount() );
+    }
+
+    private SQLiteDataSource createDatabase( String name )
+            throws Exception
+    {
+        File file = File.createTempFile( "sqlite-" + name + "-", ".db" ).getCanonicalFile();
+        files.add( file );
+
+        SQLiteDataSource ds = new SQLiteDataSource();
+        ds.setEncoding( "UTF-8" );
+        ds.setUrl( "jdbc:sqlite:" + file );
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLRunner exec = new SQLRunner( tx );
+            exec.execute( new SQLQueryBuilder( "create table SOURCE (NAME varchar(32) not null)" ) );
+            exec.execute( new SQLQueryBuilder( "insert into SOURCE (NAME) values (?)", name ) );
+            tx.commit();
+        }
+        return ds;
+    }
+
+    private static DataSource ignoreReadOnly( DataSource ds )
+    {
+        return ( DataSource ) Proxy.newProxyInstance( SQLRouterTest.class.getClassLoader(), new Class<?>[]{ DataSource.class }, ( proxy, method, args ) -> {
+            Object result = invoke( ds, method, args );
+            if ( !( result instanceof Connection ) ) {
+                return result;
+            }
+            Connection conn = ( Connection ) result;
+            return Proxy.newProxyInstance( SQLRouterTest.class.getClassLoader(), new Class<?>[]{ Connection.class }, ( p, m, a ) -> {
+                return m.getName().equals( "setReadOnly" ) ? null : invoke( conn, m, a );
+            } );
+        } );
+    }
+
+    private static Object invoke( Object target, Method method, Object[] args )
+            throws Throwable
+    {
+        try {
+            return method.invoke( target, args );
+        } catch ( InvocationTargetException ex ) {
+            throw ex.getCause();
+        }
+    }
+
+    private static String source( SQLTransaction tx )
+    {
+        return new SQLRunner( tx ).querySingle( record -> record.getString( "NAME" ).get(),
+                                                new SQLQueryBuilder( "select NAME from SOURCE limit 1" ) );
+    }
+
+}
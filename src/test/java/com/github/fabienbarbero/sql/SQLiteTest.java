@@ -19,6 +19,23 @@
 package com.github.fabienbarbero.sql;
 
 import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import com.github.fabienbarbero.sql.helper.SQLHelper;
 import org.junit.After;
@@ -153,6 +170,322 @@ public class SQLiteTest
         }
     }
 
+    @Test
+    public void testConnectionSettings()
+            throws Exception
+    {
+        // Count the calls reaching the driver
+        Map<String, Integer> calls = new HashMap<>();
+        try (Connection physical = ds.getConnection()) {
+            Connection conn = ( Connection ) Proxy.newProxyInstance( Connection.class.getClassLoader(), new Class<?>[]{ Connection.class }, ( proxy, method, args ) -> {
+                calls.merge( method.getName(), 1, Integer::sum );
+                if ( method.getName().equals( "close" ) || method.getName().equals( "isClosed" ) ) {
+                    // Keep the physical connection open to check its settings
+                    return method.getName().equals( "close" ) ? null : false;
+                }
+                try {
+                    return method.invoke( physical, args );
+                } catch ( InvocationTargetException ex ) {
+                    throw ex.getCause();
+                }
+            } );
+
+            try (SQLTransaction tx = SQLTransaction.begin( conn, false, SQLTransaction.IsolationLevel.SERIALIZABLE )) {
+                for ( int i = 0; i < 3; i++ ) {
+                    new SQLRunner( tx ).count( new SQLQueryBuilder( "select count(*) from USERS" ) );
+                    tx.commit();
+                }
+                assertFalse( physical.getAutoCommit() );
+            }
+            // The settings are restored on close
+            assertTrue( physical.getAutoCommit() );
+        }
+        assertEquals( Integer.valueOf( 1 ), calls.get( "getAutoCommit" ) );
+        assertEquals( Integer.valueOf( 2 ), calls.get( "setAutoCommit" ) );
+        assertEquals( Integer.valueOf( 1 ), calls.get( "isReadOnly" ) );
+        assertNull( calls.get( "setReadOnly" ) );
+        assertNull( calls.get( "getTransactionIsolation" ) );
+        assertEquals( Integer.valueOf( 1 ), calls.get( "setTransactionIsolation" ) );
+        // Nothing to roll back since the last commit
+        assertNull( calls.get( "rollback" ) );
+    }
+
+    @Test
+    public void testStatementCache()
+            throws Exception
+    {
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLStatementCache cache = tx.enableStatementCache( 2 );
+            SQLRunner exec = new SQLRunner( tx );
+            UserDAOImpl userDAO = new UserDAOImpl( tx );
+
+            User user = User.newInstance( "john doe", "john@doe.com" );
+            userDAO.addEntity( user );
+            for ( int i = 0; i < 10; i++ ) {
+                assertEquals( user, userDAO.find( user.getUuid() ) );
+            }
+            assertEquals( 2, cache.getMissCount() );
+            assertEquals( 9, cache.getHitCount() );
+            assertEquals( 2, cache.size() );
+
+            // Nested use of the same query
+            try (SQLIterator<User> it = exec.queryIterator( userDAO, null, false, new SQLQueryBuilder( "select * from USERS" ) )) {
+                assertTrue( it.hasNext() );
+                assertEquals( 1, exec.query( userDAO, new SQLQueryBuilder( "select * from USERS" ) ).size() );
+            }
+
+            exec.count( new SQLQueryBuilder( "select count(*) from USERS" ) );
+            assertEquals( 2, cache.size() );
+            assertTrue( cache.getEvictionCount() > 0 );
+        }
+    }
+
+    @Test
+    public void testInList()
+            throws Exception
+    {
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLStatementCache cache = tx.enableStatementCache( 10 );
+            SQLRunner exec = new SQLRunner( tx );
+            UserDAOImpl userDAO = new UserDAOImpl( tx );
+
+            List<String> emails = new ArrayList<>();
+            for ( int i = 0; i < 1500; i++ ) {
+                User user = User.newInstance( "user " + i, "user" + i + "@doe.com" );
+                userDAO.addEntity( user );
+                emails.add( user.getEmail() );
+            }
+            long misses = cache.getMissCount();
+            long hits = cache.getHitCount();
+
+            // 5, 6, 7 and 8 values share the same query
+            for ( int count = 5; count <= 8; count++ ) {
+                SQLQueryBuilder query = new SQLQueryBuilder( "select count(*) from USERS where " ).appendIn( "EMAIL", emails.subList( 0, count ) );
+                assertEquals( "select count(*) from USERS where EMAIL in (?,?,?,?,?,?,?,?)", query.getSQL() );
+                assertEquals( count, exec.count( query ) );
+            }
+            assertEquals( misses + 1, cache.getMissCount() );
+            assertEquals( hits + 3, cache.getHitCount() );
+
+            // Too many values for a single list
+            try {
+                new SQLQueryBuilder( "select count(*) from USERS where " ).appendIn( "EMAIL", emails );
+                fail();
+            } catch ( IllegalArgumentException ex ) {
+                // Expected
+            }
+
+            // More values than the SQLite parameters limit (999) use several queries of the same shape
+            List<String> values = new ArrayList<>( emails );
+            values.addAll( emails.subList( 0, 100 ) );
+            misses = cache.getMissCount();
+            List<User> users = exec.queryIn( userDAO, new SQLQueryBuilder( "select * from USERS where " ), "EMAIL", values );
+            assertEquals( 1500, users.size() );
+            assertEquals( misses + 1, cache.getMissCount() );
+
+            // Empty list
+            SQLQueryBuilder query = new SQLQueryBuilder( "select count(*) from USERS where " ).appendIn( "EMAIL", Collections.emptyList() );
+            assertEquals( 0, exec.count( query ) );
+        }
+    }
+
+    @Test
+    public void testTempTable()
+            throws Exception
+    {
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLRunner exec = new SQLRunner( tx );
+            UserDAOImpl userDAO = new UserDAOImpl( tx );
+
+            List<String> emails = new ArrayList<>();
+            for ( int i = 0; i < 2000; i++ ) {
+                User user = User.newInstance( "user " + i, "user" + i + "@doe.com" );
+                userDAO.addEntity( user );
+                emails.add( user.getEmail() );
+                emails.add( "unknown" + i + "@doe.com" );
+            }
+            emails.add( emails.get( 0 ) );
+
+            SQLQueryBuilder query = new SQLQueryBuilder( "select * from USERS where NAME like ? and ", "user%" );
+            assertEquals( 1, exec.queryIn( userDAO, query, "EMAIL", emails.subList( 0, 2 ) ).size() );
+
+            try {
+                exec.setTempTableThreshold( 100, null );
+                fail();
+            } catch ( IllegalArgumentException ex ) {
+                // Expected
+            }
+
+            exec.setTempTableThreshold( 100, "varchar(128)" );
+            SQLQueryCache queryCache = new SQLQueryCache( 10, 1, TimeUnit.HOURS );
+            exec.setQueryCache( queryCache );
+            exec.queryCached( userDAO, new SQLQueryBuilder( "select * from USERS" ), "USERS" );
+            SQLStatementCache cache = tx.enableStatementCache( 10 );
+            assertEquals( 2000, exec.queryIn( userDAO, query, "EMAIL", emails ).size() );
+            assertEquals( 2000, exec.queryIn( userDAO, query, "EMAIL", emails ).size() );
+            // The "create" and "delete" statements are not cached
+            assertEquals( 2, cache.getMissCount() );
+            assertEquals( 2, cache.size() );
+            // The temporary table does not invalidate the query cache
+            assertEquals( 1, queryCache.size() );
+            assertEquals( 1, exec.queryIn( userDAO, query, "EMAIL", emails.subList( 0, 2 ) ).size() );
+
+            // Nested use from a mapper
+            exec.setTempTableThreshold( 1, "varchar(128)" );
+            SQLRecordMapper<String> nested = record -> {
+                List<String> values = Arrays.asList( record.getString( "EMAIL" ).get(), "none" );
+                return exec.queryIn( userDAO, query, "EMAIL", values ).get( 0 ).getName();
+            };
+            List<String> names = exec.queryIn( nested, query, "EMAIL", emails.subList( 0, 4 ) );
+            assertEquals( 2, names.size() );
+            assertTrue( names.contains( "user 1" ) );
+            exec.setTempTableThreshold( 100, "varchar(128)" );
+
+            // The table is emptied after an error
+            try {
+                exec.queryIn( userDAO, new SQLQueryBuilder( "select * from MISSING where " ), "EMAIL", emails );
+                fail();
+            } catch ( SQLFaultException ex ) {
+                // Expected
+            }
+            assertEquals( 2000, exec.queryIn( userDAO, query, "EMAIL", emails ).size() );
+            assertEquals( "select * from USERS where NAME like ? and ", query.getSQL() );
+        }
+    }
+
+    @Test
+    public void testRecordColumns()
+            throws Exception
+    {
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLRunner exec = new SQLRunner( tx );
+            UserDAO userDAO = new UserDAOImpl( tx );
+            userDAO.addEntity( User.newInstance( "john doe", "john@doe.com" ) );
+            userDAO.addEntity( User.newInstance( "jane doe", "jane@doe.com" ) );
+
+            List<String> values = exec.query( record -> record.getString( "Mail" ).get() + "/" + record.getString( "name" ).get()
+                                                        + "/" + record.getString( 2 ).get(),
+                                              new SQLQueryBuilder( "select NAME, EMAIL as Mail from USERS order by NAME" ) );
+            assertEquals( Arrays.asList( "jane@doe.com/jane doe/jane@doe.com", "john@doe.com/john doe/john@doe.com" ), values );
+
+            // The columns are named by their labels
+            List<String> names = exec.querySingle( record -> record.getColumns().stream().map( SQLRecord.Column::getName ).collect( Collectors.toList() ),
+                                                   new SQLQueryBuilder( "select NAME, EMAIL as Mail from USERS" ) );
+            assertEquals( Arrays.asList( "NAME", "Mail" ), names );
+
+            try {
+                exec.querySingle( record -> record.getString( "UNKNOWN" ), new SQLQueryBuilder( "select * from USERS" ) );
+                fail( "The column must not be found" );
+            } catch ( SQLFaultException ex ) {
+                assertNotNull( ex.getCause() );
+            }
+        }
+    }
+
+    @Test
+    public void testPrimitiveGetters()
+            throws Exception
+    {
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLRunner exec = new SQLRunner( tx );
+            exec.execute( new SQLQueryBuilder( "create table COUNTERS (NAME varchar(32) primary key, VALUE bigint, RATIO double, ENABLED boolean)" ) );
+            exec.execute( new SQLQueryBuilder( "insert into COUNTERS values (?,?,?,?)", "a", 42L, 0.5, true ) );
+            exec.execute( new SQLQueryBuilder( "insert into COUNTERS values (?,?,?,?)", "b", null, null, null ) );
+
+            List<String> values = exec.query( record -> record.getLongOrDefault( "VALUE", -1 ) + "/"
+                                                        + record.getIntOrDefault( "VALUE", -1 ) + "/"
+                                                        + record.getDoubleOrDefault( "RATIO", -1 ) + "/"
+                                                        + record.getBooleanOrDefault( "ENABLED", false ) + "/"
+                                                        + record.isNull( "VALUE" ) + "/"
+                                                        + record.isNull( "RATIO" ) + "/"
+                                                        + record.isNull( "ENABLED" ) + "/"
+                                                        + record.isNull( "NAME" ),
+                                              new SQLQueryBuilder( "select * from COUNTERS order by NAME" ) );
+            assertEquals( Arrays.asList( "42/42/0.5/true/false/false/false/false", "-1/-1/-1.0/false/true/true/true/false" ), values );
+        }
+    }
+
+    @Test
+    public void testParameterBinders()
+            throws Exception
+    {
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLRunner exec = new SQLRunner( tx );
+            exec.setParameterBinders( new SQLParameterBinders().register( UUID.class, SQLParameterBinders.uuidAsString() ) );
+            exec.execute( new SQLQueryBuilder( "create table VALS (ID varchar(36), MODE varchar(16), AMOUNT bigint, LABEL varchar(32))" ) );
+
+            UUID id = UUID.randomUUID();
+            exec.execute( new SQLQueryBuilder( "insert into VALS values (?,?,?,?)",
+                                               id, SQLTransaction.IsolationLevel.SERIALIZABLE, 12L, SQLNull.of( Types.VARCHAR ) ) );
+
+            String value = exec.querySingle( record -> record.getString( "ID" ).get() + "/"
+                                                       + record.getEnum( "MODE", SQLTransaction.IsolationLevel.class ).get() + "/"
+                                                       + record.getLongOrDefault( "AMOUNT", 0 ) + "/"
+                                                       + record.getString( "LABEL" ).isPresent(),
+                                             new SQLQueryBuilder( "select * from VALS where ID=?", id ) );
+            assertEquals( id + "/SERIALIZABLE/12/false", value );
+        }
+    }
+
+    @Test
+    public void testKeysetPagination()
+            throws Exception
+    {
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLRunner exec = new SQLRunner( tx );
+            UserDAO userDAO = new UserDAOImpl( tx );
+            for ( int i = 0; i < 25; i++ ) {
+                userDAO.addEntity( User.newInstance( "user " + i, "user" + i + "@doe.com" ) );
+            }
+
+            SQLKeysetIterator<String> it = exec.queryByKeyset( record -> record.getString( "UUID" ).get(),
+                                                               new SQLQueryBuilder( "select * from USERS where NAME like ?", "user%" ),
+                                                               "UUID", 10, null );
+            assertEquals( 10, it.nextPage().size() );
+            Object lastKey = it.getLastKey();
+            assertNotNull( lastKey );
+
+            // Resume from the saved key
+            List<String> remaining = exec.queryByKeyset( record -> record.getString( "UUID" ).get(),
+                                                         new SQLQueryBuilder( "select * from USERS where NAME like ?", "user%" ),
+                                                         "UUID", 10, lastKey ).stream().collect( Collectors.toList() );
+            assertEquals( 15, remaining.size() );
+            assertTrue( remaining.get( 0 ).compareTo( ( String ) lastKey ) > 0 );
+
+            assertEquals( 15, it.nextPage().size() + it.nextPage().size() );
+            assertTrue( it.nextPage().isEmpty() );
+            assertFalse( it.hasNext() );
+        }
+    }
+
+    @Test
+    public void testCSVExport()
+            throws Exception
+    {
+        File csvFile = File.createTempFile( "export-", ".csv" );
+        try (SQLTransaction tx = SQLTransaction.begin( ds )) {
+            SQLRunner exec = new SQLRunner( tx );
+            exec.execute( new SQLQueryBuilder( "insert into USERS (UUID, EMAIL, NAME) values (?,?,?)", "1", "john@doe.com", "doe, \"john\"" ) );
+            exec.execute( new SQLQueryBuilder( "insert into USERS (UUID, EMAIL, NAME) values (?,?,?)", "2", "jane@doe.com", "jane d\u00f6e" ) );
+
+            SQLCSVExporter exporter = new SQLCSVExporter();
+            exporter.setBufferSize( 16 );
+            exporter.setLineSeparator( "\n" );
+            SQLCSVExporter.Result result;
+            try (FileChannel channel = FileChannel.open( csvFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING )) {
+                result = exporter.export( exec, new SQLQueryBuilder( "select UUID, NAME, null as EMPTY from USERS order by UUID" ), channel );
+            }
+
+            String expected = "UUID,NAME,EMPTY\n1,\"doe, \"\"john\"\"\",\n2,jane d\u00f6e,\n";
+            assertEquals( 2, result.getRows() );
+            assertEquals( expected.getBytes( StandardCharsets.UTF_8 ).length, result.getBytes() );
+            assertEquals( expected, new String( Files.readAllBytes( csvFile.toPath() ), StandardCharsets.UTF_8 ) );
+
+        } finally {
+            csvFile.delete();
+        }
+    }
+
     private void ensureUserTableCreated( SQLTransaction tx )
     {
         SQLRunner exec = new SQLRunner( tx );